@@ -0,0 +1,132 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.BookingDTO;
+import se325.assignment01.concert.service.domain.Booking;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.domain.User;
+import se325.assignment01.concert.service.mapper.BookingMapper;
+import se325.assignment01.concert.service.mapper.SeatMapper;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the queries behind GET bookings and GET bookings/{id}, run against an in-memory H2 database set up
+ * with the service's persistence unit and db-init.sql. Each benchmark performs the same work as the corresponding
+ * ConcertResource method, from creating a read-only EntityManager through to mapping the results to DTOs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BookingQueryBenchmark {
+
+    private static final int SEATS_PER_BOOKING = 3;
+    // As in ConcertResource.
+    private static final int STREAM_FETCH_SIZE = 200;
+
+    @Param({"1", "10", "40"})
+    public int numBookings;
+
+    private EntityManagerFactory factory;
+    private long userId;
+
+    @Setup
+    public void setup() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:concert-benchmarks;DB_CLOSE_DELAY=-1");
+        factory = Persistence.createEntityManagerFactory("se325.assignment01.concert", properties);
+
+        EntityManager em = factory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            User user = em.createNamedQuery(User.FIND_BY_USERNAME, User.class)
+                    .setParameter("username", "testuser")
+                    .getSingleResult();
+            userId = user.getId();
+            for (int i = 0; i < numBookings; i++) {
+                List<Seat> booked = new ArrayList<>();
+                for (int index = i * SEATS_PER_BOOKING; index < (i + 1) * SEATS_PER_BOOKING; index++) {
+                    Seat seat = new Seat(Fixtures.DATE, index, true);
+                    em.persist(seat);
+                    booked.add(seat);
+                }
+                em.persist(new Booking(i + 1, 1, Fixtures.DATE, booked, user));
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public List<BookingDTO> retrieveAllBookings() {
+        EntityManager em = createReadOnlyEntityManager();
+        try (ScrollableResults rows = em
+                .createNamedQuery(Booking.FIND_SEAT_ROWS_BY_USER, Object[].class)
+                .setParameter("userId", userId)
+                .unwrap(org.hibernate.query.Query.class)
+                .setFetchSize(STREAM_FETCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            // Groups the rows into bookings as ConcertResource does, collecting them instead of writing them out.
+            List<BookingDTO> dtos = new ArrayList<>();
+            BookingDTO booking = null;
+            long bookingId = 0;
+            while (rows.next()) {
+                if (booking == null || rows.getLong(0) != bookingId) {
+                    bookingId = rows.getLong(0);
+                    booking = new BookingDTO(rows.getLong(1), (LocalDateTime) rows.get(2), new ArrayList<>());
+                    dtos.add(booking);
+                }
+                booking.getSeats().add(SeatMapper.toDTO(rows.getLong(3)));
+            }
+            return dtos;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public BookingDTO retrieveBooking() {
+        EntityManager em = createReadOnlyEntityManager();
+        try {
+            List<Booking> found = em.createNamedQuery(Booking.FIND, Booking.class)
+                    .setParameter("id", 1L)
+                    .getResultList();
+            return BookingMapper.toDTO(found.get(0));
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Creates an EntityManager with the same session defaults as PersistenceManager.createReadOnlyEntityManager(), which
+     * ConcertResource reads bookings with, so the benchmarks skip the snapshots and flushes that it skips.
+     */
+    private EntityManager createReadOnlyEntityManager() {
+        EntityManager em = factory.createEntityManager();
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        return em;
+    }
+}
@@ -0,0 +1,55 @@
+package se325.assignment01.concert.benchmarks;
+
+import se325.assignment01.concert.common.types.Genre;
+import se325.assignment01.concert.service.domain.Booking;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.domain.Performer;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.domain.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Utility class that builds domain objects shaped like the service's data, for the benchmarks to work on.
+ */
+public class Fixtures {
+
+    public static final LocalDateTime DATE = LocalDateTime.of(2020, 2, 15, 20, 0);
+
+    /**
+     * Creates a concert with several dates and performers, like the larger concerts in db-init.sql.
+     */
+    public static Concert concert() {
+        Concert concert = new Concert(1L, "PTX: The World Tour", "concerts/ptx.jpg",
+                "Three-time Grammy Award-winning and US multi-platinum-selling group, PENTATONIX, bring their "
+                        + "phenomenal vocal talents to New Zealand this summer in what will be their second only visit.");
+        for (int i = 0; i < 4; i++) {
+            concert.getDates().add(DATE.plusDays(i));
+        }
+        for (long id = 1; id <= 3; id++) {
+            concert.getPerformers().add(new Performer(id, "Performer " + id, "performers/" + id + ".jpg", Genre.Pop,
+                    "Performer " + id + " is a performer who has performed many performances."));
+        }
+        return concert;
+    }
+
+    /**
+     * Creates a booking for the given number of seats, starting from seat A1.
+     */
+    public static Booking booking(int numSeats) {
+        return new Booking(1, 1, DATE, seats(numSeats), new User("testuser", "pa55word"));
+    }
+
+    /**
+     * Creates the given number of unbooked seats, starting from seat A1.
+     */
+    public static List<Seat> seats(int numSeats) {
+        List<Seat> seats = new ArrayList<>();
+        for (int i = 0; i < numSeats; i++) {
+            seats.add(new Seat(DATE, i, false));
+        }
+        return seats;
+    }
+}
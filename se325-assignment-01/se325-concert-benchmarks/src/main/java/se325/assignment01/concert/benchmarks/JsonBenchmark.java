@@ -0,0 +1,102 @@
+package se325.assignment01.concert.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.BookingDTO;
+import se325.assignment01.concert.common.dto.ConcertDTO;
+import se325.assignment01.concert.common.dto.SeatDTO;
+import se325.assignment01.concert.service.mapper.BookingMapper;
+import se325.assignment01.concert.service.mapper.ConcertMapper;
+import se325.assignment01.concert.service.mapper.SeatMapper;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for converting DTOs to and from JSON, as the service's Jackson provider does for each request. ConcertDTO
+ * and BookingDTO dates go through LocalDateTimeSerializer and LocalDateTimeDeserializer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    private ObjectWriter concertWriter;
+    private ObjectReader concertReader;
+    private ObjectWriter bookingWriter;
+    private ObjectReader bookingReader;
+    private ObjectWriter seatsWriter;
+    private ObjectReader seatsReader;
+
+    private ConcertDTO concert;
+    private BookingDTO booking;
+    private List<SeatDTO> seats;
+
+    private byte[] concertJson;
+    private byte[] bookingJson;
+    private byte[] seatsJson;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        TypeReference<List<SeatDTO>> seatList = new TypeReference<List<SeatDTO>>() {
+        };
+        concertWriter = mapper.writerFor(ConcertDTO.class);
+        concertReader = mapper.readerFor(ConcertDTO.class);
+        bookingWriter = mapper.writerFor(BookingDTO.class);
+        bookingReader = mapper.readerFor(BookingDTO.class);
+        seatsWriter = mapper.writerFor(seatList);
+        seatsReader = mapper.readerFor(seatList);
+
+        concert = ConcertMapper.toConcertDTO(Fixtures.concert());
+        booking = BookingMapper.toDTO(Fixtures.booking(4));
+        seats = new ArrayList<>();
+        for (Seat seat : Fixtures.seats(TheatreLayout.NUM_SEATS_IN_THEATRE)) {
+            seats.add(SeatMapper.toDTO(seat));
+        }
+
+        concertJson = concertWriter.writeValueAsBytes(concert);
+        bookingJson = bookingWriter.writeValueAsBytes(booking);
+        seatsJson = seatsWriter.writeValueAsBytes(seats);
+    }
+
+    @Benchmark
+    public byte[] writeConcert() throws IOException {
+        return concertWriter.writeValueAsBytes(concert);
+    }
+
+    @Benchmark
+    public ConcertDTO readConcert() throws IOException {
+        return concertReader.readValue(concertJson);
+    }
+
+    @Benchmark
+    public byte[] writeBooking() throws IOException {
+        return bookingWriter.writeValueAsBytes(booking);
+    }
+
+    @Benchmark
+    public BookingDTO readBooking() throws IOException {
+        return bookingReader.readValue(bookingJson);
+    }
+
+    @Benchmark
+    public byte[] writeAllSeats() throws IOException {
+        return seatsWriter.writeValueAsBytes(seats);
+    }
+
+    @Benchmark
+    public List<SeatDTO> readAllSeats() throws IOException {
+        return seatsReader.readValue(seatsJson);
+    }
+}
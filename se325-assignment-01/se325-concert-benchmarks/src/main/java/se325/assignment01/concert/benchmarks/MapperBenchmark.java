@@ -0,0 +1,67 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.common.dto.BookingDTO;
+import se325.assignment01.concert.common.dto.ConcertDTO;
+import se325.assignment01.concert.common.dto.SeatDTO;
+import se325.assignment01.concert.service.domain.Booking;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.mapper.BookingMapper;
+import se325.assignment01.concert.service.mapper.ConcertMapper;
+import se325.assignment01.concert.service.mapper.SeatMapper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for mapping domain objects to DTOs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+    private Concert concert;
+    private Seat seat;
+
+    /**
+     * The booking to map, kept apart so that only {@link #bookingToDTO(BookingState)} runs for each booking size.
+     */
+    @State(Scope.Benchmark)
+    public static class BookingState {
+
+        @Param({"1", "4", "20"})
+        public int seatsPerBooking;
+
+        private Booking booking;
+
+        @Setup
+        public void setup() {
+            booking = Fixtures.booking(seatsPerBooking);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        concert = Fixtures.concert();
+        seat = Fixtures.booking(1).getSeats().get(0);
+    }
+
+    @Benchmark
+    public ConcertDTO concertToDTO() {
+        return ConcertMapper.toConcertDTO(concert);
+    }
+
+    @Benchmark
+    public BookingDTO bookingToDTO(BookingState state) {
+        return BookingMapper.toDTO(state.booking);
+    }
+
+    @Benchmark
+    public SeatDTO seatToDTO() {
+        return SeatMapper.toDTO(seat);
+    }
+}
@@ -0,0 +1,52 @@
+package se325.assignment01.concert.benchmarks;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+import se325.assignment01.concert.service.util.ConcertUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for creating a date's seats, as ConcertUtils does for every date when the database is initialised: the
+ * seats are inserted by id in JDBC batches, in a transaction of the date's own. Each invocation's transaction is rolled
+ * back, so the same date's seats can be inserted again by the next one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeatCreationBenchmark {
+
+    private EntityManagerFactory factory;
+
+    @Setup
+    public void setup() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:concert-seat-benchmarks;DB_CLOSE_DELAY=-1");
+        factory = Persistence.createEntityManagerFactory("se325.assignment01.concert", properties);
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.close();
+    }
+
+    @Benchmark
+    public void createSeatsFor() {
+        EntityManager em = factory.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.unwrap(Session.class).doWork(connection -> ConcertUtils.insertSeatsFor(connection, Fixtures.DATE));
+        } finally {
+            em.getTransaction().rollback();
+            em.close();
+        }
+    }
+}
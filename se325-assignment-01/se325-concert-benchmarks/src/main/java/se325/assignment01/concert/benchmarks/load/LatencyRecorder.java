@@ -0,0 +1,100 @@
+package se325.assignment01.concert.benchmarks.load;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the latency and outcome of each request made by one virtual user. Each user has its own recorder, so that
+ * recording never contends; the recorders are merged once the run is over.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> samples = new TreeMap<>();
+
+    /***
+     * Records a request.
+     * @param endpoint The name of the endpoint (or flow) the request was made to
+     * @param nanos How long the request took
+     * @param ok Whether the response was one the flow expects
+     */
+    public void record(String endpoint, long nanos, boolean ok) {
+        samples.computeIfAbsent(endpoint, k -> new Samples()).add(nanos, ok);
+    }
+
+    /***
+     * Adds the samples from another recorder to this one.
+     * @param other The other recorder
+     */
+    public void merge(LatencyRecorder other) {
+        for (Map.Entry<String, Samples> entry : other.samples.entrySet()) {
+            samples.computeIfAbsent(entry.getKey(), k -> new Samples()).addAll(entry.getValue());
+        }
+    }
+
+    /***
+     * Prints the throughput, error count and latency percentiles for each endpoint, along with the totals.
+     * @param out Where to print the report
+     * @param seconds The length of the measured period, for calculating throughput
+     */
+    public void report(PrintStream out, double seconds) {
+        out.printf("%-12s %9s %9s %7s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        Samples total = new Samples();
+        for (Map.Entry<String, Samples> entry : samples.entrySet()) {
+            print(out, entry.getKey(), entry.getValue(), seconds);
+            total.addAll(entry.getValue());
+        }
+        print(out, "total", total, seconds);
+    }
+
+    private static void print(PrintStream out, String name, Samples samples, double seconds) {
+        long[] sorted = Arrays.copyOf(samples.nanos, samples.size);
+        Arrays.sort(sorted);
+        out.printf("%-12s %9d %9.1f %7d %9.2f %9.2f %9.2f %9.2f%n",
+                name, sorted.length, sorted.length / seconds, samples.errors,
+                millis(percentile(sorted, 0.5)), millis(percentile(sorted, 0.99)),
+                millis(percentile(sorted, 0.999)), millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * A growable array of latencies, so that recording a request doesn't allocate.
+     */
+    private static class Samples {
+        long[] nanos = new long[1024];
+        int size;
+        long errors;
+
+        void add(long latency, boolean ok) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        void addAll(Samples other) {
+            if (size + other.size > nanos.length) {
+                nanos = Arrays.copyOf(nanos, Math.max(size + other.size, nanos.length * 2));
+            }
+            System.arraycopy(other.nanos, 0, nanos, size, other.size);
+            size += other.size;
+            errors += other.errors;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package se325.assignment01.concert.benchmarks.load;
+
+import se325.assignment01.concert.common.dto.*;
+import se325.assignment01.concert.common.types.BookingStatus;
+import se325.assignment01.concert.service.util.ServiceConfig;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Response;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A load generator that drives a running concert service with a mix of the flows exercised by ConcertResourceIT, and
+ * reports the throughput and latency percentiles of each.
+ * <p>
+ * Start the service in the embedded Jetty container (from se325-concert-service, "mvn jetty:run-war"), then run
+ * <pre>
+ *     java -cp se325-concert-benchmarks/target/benchmarks.jar se325.assignment01.concert.benchmarks.load.LoadTest
+ * </pre>
+ * The run is configured with the following system properties (or environment variables, see {@link ServiceConfig}):
+ * <ul>
+ *     <li>"concert.load.uri" - the service's base URI. Defaults to http://localhost:10000/services.</li>
+ *     <li>"concert.load.users" - the number of concurrent virtual users. Defaults to 16.</li>
+ *     <li>"concert.load.warmupSeconds" - how long to run before measuring. Defaults to 10.</li>
+ *     <li>"concert.load.seconds" - how long to measure for. Defaults to 30.</li>
+ *     <li>"concert.load.reset" - whether to reset the database before starting. Defaults to true.</li>
+ *     <li>"concert.load.mix" - the relative weight of each flow. Defaults to
+ *     "summaries:25,concert:20,seats:25,login:5,booking:15,conflict:5,subscribe:5".</li>
+ * </ul>
+ * Each virtual user logs in, then repeatedly picks a flow at random according to the mix and runs it without pausing,
+ * so the throughput reported is the most the service managed at that concurrency. Running with increasing numbers of
+ * users shows where latency starts to climb faster than throughput.
+ * <p>
+ * Bookings pick random seats from those reported as unbooked, so a 403 caused by another user taking a seat first is
+ * expected, and isn't counted as an error. Once a date sells out, its bookings become 403s too; reset the database
+ * between runs. Subscriptions ask to be notified once 1% of a date's seats are booked, so they measure the subscribe
+ * path rather than how long a date takes to sell.
+ */
+public class LoadTest {
+
+    private static final String[] USERNAMES = {"testuser", "testuser2"};
+    private static final String PASSWORD = "pa55word";
+    private static final String DEFAULT_MIX = "summaries:25,concert:20,seats:25,login:5,booking:15,conflict:5,subscribe:5";
+    private static final long SUBSCRIBE_TIMEOUT_SECONDS = 5;
+
+    private final String serviceUri;
+    private final List<ConcertDate> dates = new ArrayList<>();
+    private final Map<String, Integer> mix = new LinkedHashMap<>();
+    private int totalWeight;
+
+    private volatile boolean measuring;
+    private volatile boolean stopping;
+
+    public LoadTest(String baseUri, String mixSpec) {
+        this.serviceUri = baseUri + "/concert-service";
+        for (String part : mixSpec.split(",")) {
+            String[] flowAndWeight = part.trim().split(":");
+            int weight = Integer.parseInt(flowAndWeight[1].trim());
+            if (weight > 0) {
+                mix.put(flowAndWeight[0].trim(), weight);
+                totalWeight += weight;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUri = ServiceConfig.getString("concert.load.uri", "http://localhost:10000/services");
+        int users = ServiceConfig.getInt("concert.load.users", 16);
+        int warmupSeconds = ServiceConfig.getInt("concert.load.warmupSeconds", 10);
+        int seconds = ServiceConfig.getInt("concert.load.seconds", 30);
+        boolean reset = ServiceConfig.getBoolean("concert.load.reset", true);
+
+        LoadTest test = new LoadTest(baseUri, ServiceConfig.getString("concert.load.mix", DEFAULT_MIX));
+        System.out.printf("Running %s with %d users for %ds (after %ds warmup), mix %s%n",
+                baseUri, users, seconds, warmupSeconds, test.mix);
+        LatencyRecorder results = test.run(users, warmupSeconds, seconds, reset);
+        results.report(System.out, seconds);
+    }
+
+    /***
+     * Runs the load test.
+     * @param users The number of concurrent virtual users
+     * @param warmupSeconds How long to run before measuring
+     * @param seconds How long to measure for
+     * @param reset Whether to reset the database first
+     * @return The requests made while measuring
+     */
+    public LatencyRecorder run(int users, int warmupSeconds, int seconds, boolean reset) throws InterruptedException {
+        Client client = ClientBuilder.newClient();
+        try {
+            if (reset) {
+                client.target(serviceUri + "-test/reset").request().get().close();
+            }
+            for (ConcertDTO concert : client.target(serviceUri + "/concerts").request()
+                    .get(new GenericType<List<ConcertDTO>>() {
+                    })) {
+                for (LocalDateTime date : concert.getDates()) {
+                    dates.add(new ConcertDate(concert.getId(), date));
+                }
+            }
+        } finally {
+            client.close();
+        }
+
+        List<VirtualUser> virtualUsers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            VirtualUser user = new VirtualUser(USERNAMES[i % USERNAMES.length]);
+            Thread thread = new Thread(user, "virtual-user-" + i);
+            virtualUsers.add(user);
+            threads.add(thread);
+            thread.start();
+        }
+
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        measuring = true;
+        TimeUnit.SECONDS.sleep(seconds);
+        measuring = false;
+        stopping = true;
+
+        LatencyRecorder results = new LatencyRecorder();
+        for (int i = 0; i < users; i++) {
+            threads.get(i).join();
+            results.merge(virtualUsers.get(i).recorder);
+        }
+        return results;
+    }
+
+    private String pickFlow(ThreadLocalRandom random) {
+        int n = random.nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            n -= entry.getValue();
+            if (n < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * One simulated client. Has its own JAX-RS Client, and therefore its own auth cookie, like the clients in
+     * ConcertResourceIT.
+     */
+    private class VirtualUser implements Runnable {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        final String username;
+        Client client;
+        BookingRequestDTO lastBooking;
+
+        VirtualUser(String username) {
+            this.username = username;
+        }
+
+        @Override
+        public void run() {
+            client = ClientBuilder.newClient();
+            try {
+                login();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (!stopping) {
+                    String flow = pickFlow(random);
+                    long start = System.nanoTime();
+                    try {
+                        runFlow(flow, random);
+                    } catch (RuntimeException e) {
+                        // Connection failures and the like; count them against the flow and carry on.
+                        time(flow, start, false);
+                    }
+                }
+            } finally {
+                client.close();
+            }
+        }
+
+        private void runFlow(String flow, ThreadLocalRandom random) {
+            ConcertDate date = dates.get(random.nextInt(dates.size()));
+            switch (flow) {
+                case "summaries":
+                    get(flow, "/concerts/summaries");
+                    break;
+                case "concert":
+                    get(flow, "/concerts/" + date.concertId);
+                    break;
+                case "seats":
+                    BookingStatus status = BookingStatus.values()[random.nextInt(BookingStatus.values().length)];
+                    get(flow, "/seats/" + date.date + "?status=" + status);
+                    break;
+                case "login":
+                    login();
+                    break;
+                case "booking":
+                    book(date, random);
+                    break;
+                case "conflict":
+                    conflict();
+                    break;
+                case "subscribe":
+                    subscribe(date);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown flow " + flow);
+            }
+        }
+
+        private void get(String flow, String path) {
+            long start = System.nanoTime();
+            Response response = client.target(serviceUri + path).request().get();
+            response.readEntity(String.class);
+            time(flow, start, response.getStatus() == 200);
+        }
+
+        private void login() {
+            long start = System.nanoTime();
+            Response response = client.target(serviceUri + "/login").request()
+                    .post(Entity.json(new UserDTO(username, PASSWORD)));
+            response.close();
+            time("login", start, response.getStatus() == 200);
+        }
+
+        /**
+         * Looks up the unbooked seats for a date, then books a few of them, like a user choosing seats in the client.
+         */
+        private void book(ConcertDate date, ThreadLocalRandom random) {
+            long start = System.nanoTime();
+            List<SeatDTO> unbooked = client.target(serviceUri + "/seats/" + date.date + "?status=" + BookingStatus.Unbooked)
+                    .request().get(new GenericType<List<SeatDTO>>() {
+                    });
+            time("seats", start, true);
+            if (unbooked.isEmpty()) {
+                return;
+            }
+
+            List<String> labels = new ArrayList<>();
+            int numSeats = Math.min(unbooked.size(), 1 + random.nextInt(4));
+            while (labels.size() < numSeats) {
+                String label = unbooked.get(random.nextInt(unbooked.size())).getLabel();
+                if (!labels.contains(label)) {
+                    labels.add(label);
+                }
+            }
+            BookingRequestDTO request = new BookingRequestDTO(date.concertId, date.date, labels);
+
+            start = System.nanoTime();
+            Response response = client.target(serviceUri + "/bookings").request().post(Entity.json(request));
+            response.close();
+            // A 403 means another user took one of the seats first.
+            int status = response.getStatus();
+            time("booking", start, status == 201 || status == 403);
+            if (status == 201) {
+                lastBooking = request;
+            }
+        }
+
+        /**
+         * Tries to book seats this user has already booked, which must be refused.
+         */
+        private void conflict() {
+            if (lastBooking == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            Response response = client.target(serviceUri + "/bookings").request().post(Entity.json(lastBooking));
+            response.close();
+            time("conflict", start, response.getStatus() == 403);
+        }
+
+        private void subscribe(ConcertDate date) {
+            long start = System.nanoTime();
+            ConcertInfoSubscriptionDTO subscription = new ConcertInfoSubscriptionDTO(date.concertId, date.date, 1);
+            Future<Response> future = client.target(serviceUri + "/subscribe/concertInfo").request().async()
+                    .post(Entity.json(subscription));
+            try {
+                Response response = future.get(SUBSCRIBE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                response.close();
+                time("subscribe", start, response.getStatus() == 200);
+            } catch (TimeoutException e) {
+                // Nothing has been booked for the date yet.
+                future.cancel(true);
+                time("subscribe", start, false);
+            } catch (Exception e) {
+                time("subscribe", start, false);
+            }
+        }
+
+        private void time(String flow, long start, boolean ok) {
+            if (measuring) {
+                recorder.record(flow, System.nanoTime() - start, ok);
+            }
+        }
+    }
+
+    private static class ConcertDate {
+        final long concertId;
+        final LocalDateTime date;
+
+        ConcertDate(long concertId, LocalDateTime date) {
+            this.concertId = concertId;
+            this.date = date;
+        }
+    }
+}
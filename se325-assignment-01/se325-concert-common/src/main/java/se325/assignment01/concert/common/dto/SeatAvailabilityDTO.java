@@ -0,0 +1,67 @@
+package se325.assignment01.concert.common.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import se325.assignment01.concert.common.jackson.LocalDateTimeDeserializer;
+import se325.assignment01.concert.common.jackson.LocalDateTimeSerializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents the seat availability for a concert on a particular date.
+ * date                the date of the performance
+ * numSeats            the total number of seats in the venue
+ * numSeatsBooked      the number of seats which have been booked
+ * numSeatsAvailable   the number of seats which are still available
+ */
+public class SeatAvailabilityDTO {
+
+    private LocalDateTime date;
+    private int numSeats;
+    private int numSeatsBooked;
+    private int numSeatsAvailable;
+
+    public SeatAvailabilityDTO() {
+    }
+
+    public SeatAvailabilityDTO(LocalDateTime date, int numSeats, int numSeatsBooked) {
+        this.date = date;
+        this.numSeats = numSeats;
+        this.numSeatsBooked = numSeatsBooked;
+        this.numSeatsAvailable = numSeats - numSeatsBooked;
+    }
+
+    @JsonDeserialize(using = LocalDateTimeDeserializer.class)
+    @JsonSerialize(using = LocalDateTimeSerializer.class)
+    public LocalDateTime getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDateTime date) {
+        this.date = date;
+    }
+
+    public int getNumSeats() {
+        return numSeats;
+    }
+
+    public void setNumSeats(int numSeats) {
+        this.numSeats = numSeats;
+    }
+
+    public int getNumSeatsBooked() {
+        return numSeatsBooked;
+    }
+
+    public void setNumSeatsBooked(int numSeatsBooked) {
+        this.numSeatsBooked = numSeatsBooked;
+    }
+
+    public int getNumSeatsAvailable() {
+        return numSeatsAvailable;
+    }
+
+    public void setNumSeatsAvailable(int numSeatsAvailable) {
+        this.numSeatsAvailable = numSeatsAvailable;
+    }
+}
@@ -6,19 +6,45 @@ import java.util.ArrayList;
 import java.util.List;
 
 /***
- * Booking Domain Model.
+ * Booking Domain Model. Ids are assigned by the application (see BookingPipeline) rather than generated by the
+ * database.
+ * <p>
+ * A booking's seats and user are loaded lazily, so queries must fetch whatever they need. The named queries below each
+ * load their bookings in a single statement, however many bookings or seats there are.
  */
 @Entity
+@Table(indexes = @Index(name = "BOOKING_USER_IDX", columnList = "user_id, id"))
+@NamedQueries({
+        @NamedQuery(name = Booking.FIND,
+                query = "select distinct b from Booking b join fetch b.user left join fetch b.seats where b.id = :id"),
+        @NamedQuery(name = Booking.FIND_BY_IDS,
+                query = "select distinct b from Booking b left join fetch b.seats where b.id in (:ids) order by b.id"),
+        @NamedQuery(name = Booking.FIND_IDS_BY_USER_AFTER,
+                query = "select b.id from Booking b where b.user.id = :userId and b.id > :after order by b.id"),
+        @NamedQuery(name = Booking.FIND_SEAT_ROWS_BY_USER,
+                query = "select b.id, b.concertId, b.date, s.id from Booking b join b.seats s "
+                        + "where b.user.id = :userId order by b.id")
+})
 public class Booking {
+    /** Finds a booking by id, with its user and seats. */
+    public static final String FIND = "Booking.find";
+    /** Finds bookings by id, with their seats, ordered by id. */
+    public static final String FIND_BY_IDS = "Booking.findByIds";
+    /** Finds the ids of a user's bookings after a given id, in order. Used to select a page of bookings. */
+    public static final String FIND_IDS_BY_USER_AFTER = "Booking.findIdsByUserAfter";
+    /**
+     * Finds a user's booked seats as rows of booking id, concert id, date and seat id, ordered by booking id. Suits
+     * streaming, as it loads no entities.
+     */
+    public static final String FIND_SEAT_ROWS_BY_USER = "Booking.findSeatRowsByUser";
 
     @Id
-    @GeneratedValue
     private long id;
     private long concertId;
     private LocalDateTime date;
-    @OneToMany(fetch = FetchType.EAGER)
+    @OneToMany(fetch = FetchType.LAZY)
     private List<Seat> seats = new ArrayList<>();
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private User user;
 
     public Booking() {
@@ -26,6 +52,7 @@ public class Booking {
     }
 
     public Booking(long id, long concertId, LocalDateTime date, List<Seat> seats, User user) {
+        this.id = id;
         this.concertId = concertId;
         this.date = date;
         this.seats = seats;
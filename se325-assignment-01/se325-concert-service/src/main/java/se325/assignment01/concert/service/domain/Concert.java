@@ -1,7 +1,10 @@
 package se325.assignment01.concert.service.domain;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
+import org.hibernate.jpa.QueryHints;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -13,7 +16,21 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "CONCERTS")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedQueries({
+        @NamedQuery(name = Concert.FIND_ALL, query = "select c from Concert c order by c.id",
+                hints = @QueryHint(name = QueryHints.HINT_CACHEABLE, value = "true")),
+        @NamedQuery(name = Concert.FIND_SUMMARIES,
+                query = "select new se325.assignment01.concert.common.dto.ConcertSummaryDTO(c.id, c.title, c.imageName) "
+                        + "from Concert c order by c.id",
+                hints = @QueryHint(name = QueryHints.HINT_CACHEABLE, value = "true"))
+})
 public class Concert {
+    public static final String FIND_ALL = "Concert.findAll";
+    /** Selects a ConcertSummaryDTO for each concert, ordered by id, without loading the concerts. */
+    public static final String FIND_SUMMARIES = "Concert.findSummaries";
+
     @Id
     @GeneratedValue
     @Column(name = "ID")
@@ -28,9 +45,11 @@ public class Concert {
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "CONCERT_DATES", joinColumns = @JoinColumn(name = "CONCERT_ID"))
     @Column(name = "DATE")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<LocalDateTime> dates = new HashSet<>();
     @ManyToMany
     @Fetch(FetchMode.SUBSELECT)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(name = "CONCERT_PERFORMER",
             joinColumns = @JoinColumn(name = "CONCERT_ID"),
             inverseJoinColumns = @JoinColumn(name = "PERFORMER_ID")
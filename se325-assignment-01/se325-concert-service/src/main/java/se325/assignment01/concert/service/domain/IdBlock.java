@@ -0,0 +1,40 @@
+package se325.assignment01.concert.service.domain;
+
+import javax.persistence.*;
+
+/***
+ * IdBlock Domain Model. Holds the next unallocated id for one named id sequence (see BlockIdGenerator).
+ */
+@Entity
+@Table(name = "ID_BLOCKS")
+public class IdBlock {
+    @Id
+    @Column(name = "NAME")
+    private String name;
+    @Column(name = "NEXT_VALUE")
+    private long nextValue;
+
+    protected IdBlock() {
+    }
+
+    public IdBlock(String name, long nextValue) {
+        this.name = name;
+        this.nextValue = nextValue;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getNextValue() {
+        return nextValue;
+    }
+
+    public void setNextValue(long nextValue) {
+        this.nextValue = nextValue;
+    }
+}
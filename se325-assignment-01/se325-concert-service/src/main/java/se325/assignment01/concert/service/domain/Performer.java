@@ -2,6 +2,9 @@ package se325.assignment01.concert.service.domain;
 
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.jpa.QueryHints;
 import se325.assignment01.concert.common.dto.PerformerDTO;
 import se325.assignment01.concert.common.types.Genre;
 
@@ -12,7 +15,24 @@ import javax.persistence.*;
  */
 @Entity
 @Table(name = "PERFORMERS")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NamedQueries({
+        @NamedQuery(name = Performer.FIND_DTOS,
+                query = "select new se325.assignment01.concert.common.dto.PerformerDTO("
+                        + "p.id, p.name, p.imageName, p.genre, p.blurb) from Performer p order by p.id",
+                hints = @QueryHint(name = QueryHints.HINT_CACHEABLE, value = "true")),
+        @NamedQuery(name = Performer.FIND_DTO,
+                query = "select new se325.assignment01.concert.common.dto.PerformerDTO("
+                        + "p.id, p.name, p.imageName, p.genre, p.blurb) from Performer p where p.id = :id",
+                hints = @QueryHint(name = QueryHints.HINT_CACHEABLE, value = "true"))
+})
 public class Performer{
+    /** Selects a PerformerDTO for each performer, ordered by id, without loading the performers. */
+    public static final String FIND_DTOS = "Performer.findDTOs";
+    /** Selects a PerformerDTO for the performer with a given id, without loading the performer. */
+    public static final String FIND_DTO = "Performer.findDTO";
+
     @Id
     @GeneratedValue
     @Column(name = "ID")
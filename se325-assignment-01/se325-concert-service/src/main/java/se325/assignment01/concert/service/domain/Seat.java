@@ -1,42 +1,107 @@
 package se325.assignment01.concert.service.domain;
 
+import se325.assignment01.concert.service.util.TheatreLayout;
+
 import javax.persistence.*;
-import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Objects;
+import java.time.ZoneOffset;
 
 /***
- * Seat Domain Model
+ * Seat Domain Model. A seat is identified by a single number, derived from its concert date and its index in the
+ * {@link TheatreLayout}, so its label, date and price aren't stored but are recovered from the id when needed. The ids
+ * of a date's seats are consecutive, so they can be selected by range.
+ * <p>
+ * Ids are only unique while concert dates are whole minutes, so dates with seconds are refused (see
+ * {@link #idOf(LocalDateTime, int)}). They also depend on {@link TheatreLayout#NUM_SEATS_IN_THEATRE}, so the layout
+ * is fixed once seats have been stored: changing the number of seats would map the stored ids to different dates and
+ * seats, and the SEATS table would have to be rebuilt.
+ * <p>
+ * Seat entities are only used to persist seats and link them to bookings. Which seats are booked is tracked in memory
+ * by the SeatAvailabilityIndex, without an object per seat.
  */
 @Entity
-@IdClass(SeatKey.class)
+@Table(name = "SEATS")
+@NamedQueries({
+		@NamedQuery(name = Seat.FIND_BOOKED_IDS,
+				query = "select s.id from Seat s where s.id between :first and :last and s.isBooked = true"),
+		@NamedQuery(name = Seat.FIND_BY_IDS,
+				query = "select s from Seat s where s.id in (:ids)")
+})
 public class Seat {
+	/** Finds the ids of the booked seats with ids in a range (see {@link #firstIdOf} and {@link #lastIdOf}). */
+	public static final String FIND_BOOKED_IDS = "Seat.findBookedIds";
+	public static final String FIND_BY_IDS = "Seat.findByIds";
+	/** Inserts an unbooked seat, given its id, without creating an entity. Suits JDBC batches. */
+	public static final String INSERT_UNBOOKED_SQL = "insert into SEATS (ID, IS_BOOKED, VERSION) values (?, false, 0)";
 
-    // TODO Implement this class.
 	@Id
-	private String label;
+	@Column(name = "ID")
+	private long id;
+	@Column(name = "IS_BOOKED")
 	private boolean isBooked;
-	@Id
-	private LocalDateTime date;
-	private BigDecimal price;
 	@Version
+	@Column(name = "VERSION")
 	private Long version;
+
 	public Seat() {}
 
-	public Seat(String label, boolean isBooked, LocalDateTime date, BigDecimal price) {
-		this.label = label;
+	public Seat(LocalDateTime date, int index, boolean isBooked) {
+		this.id = idOf(date, index);
 		this.isBooked = isBooked;
-		this.date = date;
-		this.price = price;
 	}
 
-	public String getLabel() {
-		return label;
+	/***
+	 * @param date A concert date, which must be a whole minute
+	 * @param index The seat's index in the theatre (see {@link TheatreLayout#indexOf(String)})
+	 * @return The id of the seat
+	 * @throws IllegalArgumentException if the date has seconds, as its seats would share ids with the minute's
+	 */
+	public static long idOf(LocalDateTime date, int index) {
+		if (date.getSecond() != 0 || date.getNano() != 0) {
+			throw new IllegalArgumentException("Concert date " + date + " is not a whole minute");
+		}
+		long minute = date.toEpochSecond(ZoneOffset.UTC) / 60;
+		return minute * TheatreLayout.NUM_SEATS_IN_THEATRE + index;
+	}
+
+	/***
+	 * @return The id of the first seat for a date
+	 */
+	public static long firstIdOf(LocalDateTime date) {
+		return idOf(date, 0);
+	}
+
+	/***
+	 * @return The id of the last seat for a date
+	 */
+	public static long lastIdOf(LocalDateTime date) {
+		return idOf(date, TheatreLayout.NUM_SEATS_IN_THEATRE - 1);
+	}
+
+	/***
+	 * @param id A seat id
+	 * @return The seat's index in the theatre
+	 */
+	public static int indexOf(long id) {
+		return (int) Math.floorMod(id, (long) TheatreLayout.NUM_SEATS_IN_THEATRE);
 	}
 
-	public void setLabel(String label) {
-		this.label = label;
+	/***
+	 * @param id A seat id
+	 * @return The concert date the seat is for
+	 */
+	public static LocalDateTime dateOf(long id) {
+		long minute = Math.floorDiv(id, (long) TheatreLayout.NUM_SEATS_IN_THEATRE);
+		return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getLabel() {
+		return TheatreLayout.labelOf(indexOf(id));
 	}
 
 	public boolean isBooked() {
@@ -48,18 +113,10 @@ public class Seat {
 	}
 
 	public LocalDateTime getDate() {
-		return date;
-	}
-
-	public void setDate(LocalDateTime date) {
-		this.date = date;
+		return dateOf(id);
 	}
 
 	public BigDecimal getPrice() {
-		return price;
-	}
-
-	public void setPrice(BigDecimal price) {
-		this.price = price;
+		return TheatreLayout.priceOf(indexOf(id));
 	}
 }
@@ -5,8 +5,11 @@ import javax.persistence.*;
  * User Domain Model
  */
 @Entity
-@Table(name = "USERS")
+@Table(name = "USERS", indexes = @Index(name = "USERS_USERNAME_IDX", columnList = "USERNAME", unique = true))
+@NamedQuery(name = User.FIND_BY_USERNAME, query = "select u from User u where u.username = :username")
 public class User {
+    public static final String FIND_BY_USERNAME = "User.findByUsername";
+
     @Id
     @GeneratedValue
     @Column(name = "ID")
@@ -19,15 +22,12 @@ public class User {
     @Column(name = "VERSION")
     private long version;
 
-    private Integer hash;
-
     protected User() {
     }
 
     public User(String username, String password) {
         this.username = username;
         this.password = password;
-        this.hash = this.hashCode();
     }
 
     public long getId() {
@@ -45,21 +45,4 @@ public class User {
     public String getPassword() {
         return password;
     }
-
-    public int getHash() {
-        return hash;
-    }
-
-    public void setHash(int hash) {
-        this.hash = hash;
-    }
-
-    /***
-     * Creates a Hash Code for the User Object. Consistent hash code for every instance of User
-     * @return HashCode for User, sum of username and password hashCodes.
-     */
-    @Override
-    public int hashCode() {
-        return (username.hashCode()+password.hashCode());
-    }
 }
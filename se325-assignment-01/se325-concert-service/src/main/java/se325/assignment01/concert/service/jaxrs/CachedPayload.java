@@ -0,0 +1,18 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import javax.ws.rs.NameBinding;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks resource methods whose responses may be served from the payload cache (see
+ * {@link CachedPayloadInterceptor}). Only methods whose responses are fully identified by their request URI and ETag
+ * may be marked.
+ */
+@NameBinding
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface CachedPayload {
+}
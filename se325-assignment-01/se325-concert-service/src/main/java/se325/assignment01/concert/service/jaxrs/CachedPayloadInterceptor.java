@@ -0,0 +1,68 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import se325.assignment01.concert.service.services.CatalogCache;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This interceptor keeps the bytes written for {@link CachedPayload} responses, after serialisation and compression,
+ * and writes them again for later requests for the same URI, ETag and content coding. Catalog responses are tagged
+ * with the catalog's version, so a cached payload is never reused once the catalog has changed.
+ * <p>
+ * It runs before the {@link CompressionInterceptor}, so that the bytes it captures are already compressed. Payloads
+ * are held in the {@link CatalogCache}.
+ */
+@Provider
+@CachedPayload
+@Priority(Priorities.ENTITY_CODER - 100)
+public class CachedPayloadInterceptor implements WriterInterceptor {
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        MultivaluedMap<String, Object> headers = context.getHeaders();
+        Object tag = headers.getFirst(HttpHeaders.ETAG);
+        if (tag == null) {
+            context.proceed();
+            return;
+        }
+
+        String encoding = CompressionInterceptor.negotiate(requestHeaders);
+        EntityTag codedTag = CompressionInterceptor.codedTag(tag, encoding);
+        String key = uriInfo.getRequestUri() + " " + codedTag + " " + (encoding == null ? "identity" : encoding);
+        byte[] payload = CatalogCache.instance().getPayload(key);
+        OutputStream output = context.getOutputStream();
+        if (payload == null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            context.setOutputStream(buffer);
+            context.proceed();
+            payload = buffer.toByteArray();
+            CatalogCache.instance().putPayload(key, payload);
+        } else {
+            // The headers the CompressionInterceptor would have set.
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            headers.putSingle(HttpHeaders.ETAG, codedTag);
+            if (encoding != null)
+                headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        }
+        headers.putSingle(HttpHeaders.CONTENT_LENGTH, payload.length);
+        output.write(payload);
+    }
+}
@@ -0,0 +1,157 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This interceptor compresses response bodies with gzip or deflate, according to the request's Accept-Encoding
+ * header. gzip is preferred when the client accepts both. Responses that already have a Content-Encoding are written
+ * as they are.
+ * <p>
+ * A compressed response is a different representation from the uncompressed one, so its ETag, if it has one, is
+ * suffixed with the content coding (see {@link #codedTag(Object, String)}). Resources must evaluate If-None-Match
+ * against the coded tag for the request's negotiated coding.
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements WriterInterceptor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        MultivaluedMap<String, Object> headers = context.getHeaders();
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            context.proceed();
+            return;
+        }
+
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String encoding = negotiate(requestHeaders);
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        Object tag = headers.getFirst(HttpHeaders.ETAG);
+        if (tag != null)
+            headers.putSingle(HttpHeaders.ETAG, codedTag(tag, encoding));
+        OutputStream output = new NonClosingOutputStream(context.getOutputStream());
+        Deflater deflater = null;
+        DeflaterOutputStream compressed;
+        if (GZIP.equals(encoding)) {
+            compressed = new GZIPOutputStream(output, BUFFER_SIZE);
+        } else {
+            deflater = new Deflater();
+            compressed = new DeflaterOutputStream(output, deflater, BUFFER_SIZE);
+        }
+        try {
+            context.setOutputStream(compressed);
+            context.proceed();
+        } finally {
+            // Writes the trailer, and releases the compressor's native memory.
+            compressed.close();
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    /***
+     * Chooses the content coding for a response.
+     * @param requestHeaders The request's headers
+     * @return "gzip" or "deflate", or null if the client doesn't accept either
+     */
+    public static String negotiate(HttpHeaders requestHeaders) {
+        String acceptEncoding = requestHeaders == null ? null
+                : requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null)
+            return null;
+
+        // A coding that is named is accepted or refused by its own entry, whatever "*" says.
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean any = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] codingAndParams = part.trim().split(";");
+            String coding = codingAndParams[0].trim().toLowerCase();
+            boolean accepted = !isRefused(codingAndParams);
+            if (coding.equals(GZIP))
+                gzip = accepted;
+            else if (coding.equals(DEFLATE))
+                deflate = accepted;
+            else if (coding.equals("*"))
+                any = accepted;
+        }
+        if (gzip == null ? any : gzip)
+            return GZIP;
+        if (deflate == null ? any : deflate)
+            return DEFLATE;
+        return null;
+    }
+
+    /***
+     * Identifies the representation of a response in a content coding.
+     * @param tag The ETag of the uncompressed response, as an EntityTag or its header value
+     * @param encoding The content coding, as returned by {@link #negotiate(HttpHeaders)}
+     * @return The tag suffixed with the coding, or the tag unchanged if the coding is null
+     */
+    public static EntityTag codedTag(Object tag, String encoding) {
+        EntityTag entityTag = tag instanceof EntityTag ? (EntityTag) tag : EntityTag.valueOf(tag.toString());
+        if (encoding == null)
+            return entityTag;
+        return new EntityTag(entityTag.getValue() + "-" + encoding, entityTag.isWeak());
+    }
+
+    private static boolean isRefused(String[] codingAndParams) {
+        for (int i = 1; i < codingAndParams.length; i++) {
+            String param = codingAndParams[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lets the compressed stream be closed, releasing its native resources, without closing the container's stream.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class allows a collection to be returned as a JSON array without first building it in memory. For example:
+ * <code>
+ *     return Response.ok(new JsonArrayOutput(generator -> {
+ *         for (Thing thing : things()) {
+ *             generator.writeObject(ThingMapper.toDTO(thing));
+ *         }
+ *     })).build();
+ * </code>
+ * Elements are serialised with Jackson as they are written, honouring the same annotations as the JSON provider, and
+ * are sent to the client whenever the generator's and the container's buffers fill. The elements are produced while
+ * the response is being written, so anything they are read from (such as an EntityManager) must be opened and closed
+ * within the writer.
+ */
+public class JsonArrayOutput implements StreamingOutput {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final ElementWriter elements;
+
+    public JsonArrayOutput(ElementWriter elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonGenerator generator = MAPPER.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            elements.writeTo(generator);
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Writes the elements of the array.
+     */
+    @FunctionalInterface
+    public interface ElementWriter {
+        void writeTo(JsonGenerator generator) throws IOException;
+    }
+}
@@ -0,0 +1,123 @@
+package se325.assignment01.concert.service.jaxrs;
+
+import se325.assignment01.concert.service.util.ServiceConfig;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * This class handles keyset pagination for collection resources, via "limit" and "after" query parameters. For
+ * example:
+ * <code>
+ *     public Response retrieveThings(@QueryParam("limit") Integer limit, @QueryParam("after") Long after,
+ *                                    @Context UriInfo uriInfo) {
+ *         KeysetPage page = KeysetPage.of(limit, after);
+ *         if (page == null)
+ *             return Response.ok(allThings()).build();
+ *         List&lt;Thing&gt; rows = thingsWithIdsAbove(page.getAfter(), page.getLimit() + 1);
+ *         return page.toResponse(rows, Thing::getId, ThingMapper::toDTO, uriInfo).build();
+ *     }
+ * </code>
+ * A page holds up to "limit" elements, ordered by id, whose ids are greater than "after". When there are more elements
+ * the response carries a Link header with rel="next", whose URI requests the following page. The response body is the
+ * same JSON array as for an unpaginated request.
+ * <p>
+ * "limit" defaults to "concert.page.defaultLimit" (100) when only "after" is given, and is capped at
+ * "concert.page.maxLimit" (1000), see {@link ServiceConfig}.
+ */
+public class KeysetPage {
+
+    private static final int DEFAULT_LIMIT = ServiceConfig.getInt("concert.page.defaultLimit", 100);
+    private static final int MAX_LIMIT = ServiceConfig.getInt("concert.page.maxLimit", 1000);
+
+    private final int limit;
+    private final long after;
+
+    private KeysetPage(int limit, long after) {
+        this.limit = limit;
+        this.after = after;
+    }
+
+    /***
+     * Creates a page from the request's query parameters.
+     * @param limit The "limit" query parameter, or null if it wasn't given
+     * @param after The "after" query parameter, or null if it wasn't given
+     * @return The requested page, or null if the request isn't paginated
+     * @throws WebApplicationException 400 Bad Request if the limit isn't positive
+     */
+    public static KeysetPage of(Integer limit, Long after) {
+        if (limit == null && after == null)
+            return null;
+        if (limit != null && limit < 1)
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        return new KeysetPage(limit == null ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT),
+                after == null ? Long.MIN_VALUE : after);
+    }
+
+    /***
+     * @return The most elements to include in the page
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /***
+     * @return The id that all elements in the page must be greater than
+     */
+    public long getAfter() {
+        return after;
+    }
+
+    /***
+     * Selects the rows for this page from a list that is already held in memory.
+     * @param sortedById All rows, ordered by id
+     * @param idOf Gets a row's id
+     * @return Up to limit + 1 rows that follow the "after" id, as expected by
+     * {@link #toResponse(List, ToLongFunction, Function, UriInfo)}
+     */
+    public <T> List<T> select(List<T> sortedById, ToLongFunction<T> idOf) {
+        int low = 0;
+        int high = sortedById.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (idOf.applyAsLong(sortedById.get(mid)) <= after)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return sortedById.subList(low, Math.min(sortedById.size(), low + limit + 1));
+    }
+
+    /***
+     * Starts building the response for this page.
+     * @param rows Up to limit + 1 rows that follow the "after" id, ordered by id. The extra row, if present, shows
+     *             that there is a next page, and isn't included in the response.
+     * @param idOf Gets a row's id
+     * @param toDTO Maps a row to the element included in the response
+     * @param uriInfo The request's URI, from which the next page's URI is built
+     * @return A 200 OK response containing the page's elements, with a Link to the next page if there is one
+     */
+    public <T> Response.ResponseBuilder toResponse(List<T> rows, ToLongFunction<T> idOf, Function<T, ?> toDTO, UriInfo uriInfo) {
+        List<Object> elements = new ArrayList<>();
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            elements.add(toDTO.apply(rows.get(i)));
+        }
+        Response.ResponseBuilder response = Response.ok(elements);
+        if (rows.size() > limit) {
+            long lastId = idOf.applyAsLong(rows.get(limit - 1));
+            Link next = Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("limit", limit)
+                    .replaceQueryParam("after", lastId))
+                    .rel("next")
+                    .build();
+            response.links(next);
+        }
+        return response;
+    }
+}
@@ -2,6 +2,7 @@ package se325.assignment01.concert.service.mapper;
 
 import se325.assignment01.concert.common.dto.SeatDTO;
 import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.util.TheatreLayout;
 
 
 /***
@@ -12,4 +13,12 @@ public class SeatMapper {
         SeatDTO dto = new SeatDTO(seat.getLabel(), seat.getPrice());
         return dto;
     }
+
+    /***
+     * Maps a seat id straight to a SeatDTO, without loading the seat.
+     */
+    public static SeatDTO toDTO(long seatId){
+        int index = Seat.indexOf(seatId);
+        return new SeatDTO(TheatreLayout.labelOf(index), TheatreLayout.priceOf(index));
+    }
 }
\ No newline at end of file
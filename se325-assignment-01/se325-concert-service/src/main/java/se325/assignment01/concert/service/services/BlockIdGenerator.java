@@ -0,0 +1,96 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.service.domain.IdBlock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.RollbackException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An IdGenerator that reserves ids from the database in blocks, and then hands them out from memory.
+ * <p>
+ * Each sequence is a row in the ID_BLOCKS table holding the next unreserved id. Reserving a block locks the row, so
+ * several service nodes sharing a database each get their own blocks. Within a node, ids are handed out with a single
+ * atomic increment; only a thread that finds the current block used up takes a lock, to reserve the next block. Ids
+ * are unique but not contiguous, as a block that is discarded (by a restart or reset) leaves a gap.
+ */
+public class BlockIdGenerator implements IdGenerator {
+
+    private final String name;
+    private final int blockSize;
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+
+    /***
+     * @param name The name of the sequence, shared by all nodes that generate ids for the same table
+     * @param blockSize The number of ids reserved at a time
+     */
+    public BlockIdGenerator(String name, int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.name = name;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            Block block = current.get();
+            long id = block.next.getAndIncrement();
+            if (id < block.limit) {
+                return id;
+            }
+            synchronized (this) {
+                // Only the first thread to find the block used up reserves another.
+                if (current.get() == block) {
+                    current.set(reserve());
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void reset() {
+        current.set(new Block(0, 0));
+    }
+
+    private Block reserve() {
+        for (int attempt = 1; ; attempt++) {
+            EntityManager em = PersistenceManager.instance().createEntityManager();
+            try {
+                em.getTransaction().begin();
+                IdBlock row = em.find(IdBlock.class, name, LockModeType.PESSIMISTIC_WRITE);
+                if (row == null) {
+                    row = new IdBlock(name, 1);
+                    em.persist(row);
+                }
+                long first = row.getNextValue();
+                row.setNextValue(first + blockSize);
+                em.getTransaction().commit();
+                return new Block(first, first + blockSize);
+            } catch (RollbackException e) {
+                // Another node may have created the sequence's row first, in which case it exists now.
+                if (attempt > 1) {
+                    throw e;
+                }
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+
+    private static class Block {
+        final AtomicLong next;
+        final long limit;
+
+        Block(long first, long limit) {
+            this.next = new AtomicLong(first);
+            this.limit = limit;
+        }
+    }
+}
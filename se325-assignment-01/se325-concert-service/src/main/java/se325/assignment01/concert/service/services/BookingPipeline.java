@@ -0,0 +1,403 @@
+package se325.assignment01.concert.service.services;
+
+import org.hibernate.StaleStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se325.assignment01.concert.common.dto.BookingRequestDTO;
+import se325.assignment01.concert.service.domain.Booking;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.domain.User;
+import se325.assignment01.concert.service.util.ServiceConfig;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import javax.persistence.EntityManager;
+import javax.persistence.OptimisticLockException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Singleton class that serialises the bookings for each concert date through a single writer.
+ * <p>
+ * Each date has its own queue of pending bookings. At most one worker thread processes a date's queue at a time,
+ * taking the bookings in arrival order. Each booking is checked against the in-memory seat state in the
+ * {@link SeatAvailabilityIndex}, and any booking that asks for a taken seat is rejected with 403 Forbidden without
+ * touching the database. The bookings that pass are written in a single transaction, and their suspended responses
+ * are resumed with 201 Created once it commits.
+ * <p>
+ * Because only the writer books seats for a date, bookings no longer race each other in the database. Should a group's
+ * commit still fail (for example, because another service node booked the same seat), the date's seat state is
+ * reloaded before the next group, and the failed group's bookings are retried one at a time so that each gets its own
+ * result.
+ * <p>
+ * Group commit is tuned with the following settings (see {@link ServiceConfig}):
+ * <ul>
+ *     <li>"concert.booking.groupCommit" - whether bookings may share a transaction at all. Defaults to true.</li>
+ *     <li>"concert.booking.groupCommit.maxSize" - the most bookings written in one transaction. Defaults to 32.</li>
+ *     <li>"concert.booking.groupCommit.windowMs" - how long a writer waits for more bookings to arrive before writing
+ *     a group that isn't full. Defaults to 0, so that only the bookings that queued up during the previous write are
+ *     grouped, and an idle service writes each booking straight away.</li>
+ * </ul>
+ */
+public class BookingPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BookingPipeline.class);
+
+    private static BookingPipeline _instance = null;
+
+    // The SQLSTATE for a unique or primary key violation.
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final ConcurrentMap<LocalDateTime, DateWriter> writers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final int maxGroupSize;
+    private final long windowNanos;
+
+    private volatile IdGenerator idGenerator;
+
+    private final LongAdder transactions = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retriedGroups = new LongAdder();
+
+    protected BookingPipeline() {
+        int threads = ServiceConfig.getInt("concert.booking.writerThreads", Runtime.getRuntime().availableProcessors());
+        executor = Executors.newScheduledThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "booking-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        idGenerator = new BlockIdGenerator("Booking", ServiceConfig.getInt("concert.booking.idBlockSize", 50));
+        if (ServiceConfig.getBoolean("concert.booking.groupCommit", true)) {
+            maxGroupSize = Math.max(1, ServiceConfig.getInt("concert.booking.groupCommit.maxSize", 32));
+            windowNanos = TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(0, ServiceConfig.getLong("concert.booking.groupCommit.windowMs", 0)));
+        } else {
+            maxGroupSize = 1;
+            windowNanos = 0;
+        }
+    }
+
+    public static synchronized BookingPipeline instance() {
+        if (_instance == null) {
+            _instance = new BookingPipeline();
+        }
+        return _instance;
+    }
+
+    /***
+     * Queues a booking. The request must already have been validated and its user authenticated.
+     * @param details The booking's details
+     * @param userId The id of the user making the booking
+     * @param bookingsUri A builder for the bookings collection URI, to which the new booking's id is appended
+     * @param response The suspended response to resume with the booking's outcome
+     */
+    public void submit(BookingRequestDTO details, long userId, UriBuilder bookingsUri, AsyncResponse response) {
+        PendingBooking booking = new PendingBooking(details, userId, bookingsUri, response);
+        writers.computeIfAbsent(details.getDate(), DateWriter::new).enqueue(booking);
+    }
+
+    /***
+     * @return The generator used for the ids of new bookings
+     */
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /***
+     * Replaces the generator used for the ids of new bookings. By default ids are reserved from the database in
+     * blocks of "concert.booking.idBlockSize" (see {@link BlockIdGenerator}).
+     * @param idGenerator The new generator
+     */
+    public void setIdGenerator(IdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
+    /***
+     * @return The number of transactions and bookings written, along with the number of bookings rejected and the
+     * number of groups that had to be retried one booking at a time
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("transactions", transactions.sum());
+        stats.put("bookingsCommitted", committed.sum());
+        stats.put("bookingsRejected", rejected.sum());
+        stats.put("groupsRetried", retriedGroups.sum());
+        stats.put("maxGroupSize", (long) maxGroupSize);
+        stats.put("windowMs", TimeUnit.NANOSECONDS.toMillis(windowNanos));
+        return stats;
+    }
+
+    /**
+     * Thrown within a commit when a seat turns out to be booked already, which the in-memory seat state didn't show.
+     */
+    private static class SeatTakenException extends RuntimeException {
+        SeatTakenException(String label) {
+            super("Seat " + label + " is already booked");
+        }
+    }
+
+    /**
+     * A booking waiting to be written.
+     */
+    private static class PendingBooking {
+        final BookingRequestDTO details;
+        final long userId;
+        final UriBuilder bookingsUri;
+        final AsyncResponse response;
+        final long queuedAt = System.nanoTime();
+        Booking booking;
+
+        PendingBooking(BookingRequestDTO details, long userId, UriBuilder bookingsUri, AsyncResponse response) {
+            this.details = details;
+            this.userId = userId;
+            this.bookingsUri = bookingsUri;
+            this.response = response;
+        }
+    }
+
+    /**
+     * The single writer for one date. It is scheduled on the executor whenever it has queued bookings and isn't
+     * already scheduled, and handles one group per run so that busy dates don't starve the others. When there is a
+     * group commit window, a run that finds too few bookings for a full group is put off until the oldest booking has
+     * waited for the window.
+     */
+    private class DateWriter implements Runnable {
+        private final LocalDateTime date;
+        private final Queue<PendingBooking> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        DateWriter(LocalDateTime date) {
+            this.date = date;
+        }
+
+        void enqueue(PendingBooking booking) {
+            queue.add(booking);
+            queued.incrementAndGet();
+            schedule();
+        }
+
+        private PendingBooking poll() {
+            PendingBooking booking = queue.poll();
+            if (booking != null) {
+                queued.decrementAndGet();
+            }
+            return booking;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (windowNanos > 0 && queued.get() < maxGroupSize) {
+                PendingBooking oldest = queue.peek();
+                long wait = oldest == null ? 0 : oldest.queuedAt + windowNanos - System.nanoTime();
+                if (wait > 0) {
+                    // Still scheduled, so enqueue() won't schedule another run in the meantime.
+                    executor.schedule(this, wait, TimeUnit.NANOSECONDS);
+                    return;
+                }
+            }
+            try {
+                BitSet booked;
+                try {
+                    booked = SeatAvailabilityIndex.instance().getBookedSeats(date);
+                } catch (RuntimeException e) {
+                    // Without the seat state nothing can be validated, so fail what's waiting rather than spin.
+                    PendingBooking booking;
+                    for (int i = 0; i < maxGroupSize && (booking = poll()) != null; i++) {
+                        booking.response.resume(e);
+                    }
+                    return;
+                }
+                List<PendingBooking> group = nextGroup(booked);
+                if (!group.isEmpty()) {
+                    write(group);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("Booking writer for " + date + " failed", e);
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        /**
+         * Takes bookings off the queue until the group is full or the queue is empty, rejecting any that conflict with
+         * seats that are already booked or are claimed by an earlier booking in the group.
+         *
+         * @param claimed the seats that are already booked. Updated with the seats claimed by the group.
+         */
+        private List<PendingBooking> nextGroup(BitSet claimed) {
+            List<PendingBooking> group = new ArrayList<>();
+            PendingBooking booking;
+            while (group.size() < maxGroupSize && (booking = poll()) != null) {
+                List<Integer> seats = new ArrayList<>();
+                boolean available = true;
+                for (String label : booking.details.getSeatLabels()) {
+                    int index = TheatreLayout.indexOf(label);
+                    if (claimed.get(index) || seats.contains(index)) {
+                        available = false;
+                        break;
+                    }
+                    seats.add(index);
+                }
+                if (!available) {
+                    rejected.increment();
+                    booking.response.resume(Response.status(Response.Status.FORBIDDEN).build());
+                    continue;
+                }
+                for (int index : seats) {
+                    claimed.set(index);
+                }
+                group.add(booking);
+            }
+            return group;
+        }
+
+        /**
+         * Writes a group of bookings, falling back to writing them one at a time if the group can't be committed.
+         */
+        private void write(List<PendingBooking> group) {
+            try {
+                commit(group);
+            } catch (RuntimeException e) {
+                if (!isSeatConflict(e)) {
+                    for (PendingBooking booking : group) {
+                        booking.response.resume(e);
+                    }
+                    return;
+                }
+                // The seat state let through a booking the database refused, so it is out of step with the database.
+                SeatAvailabilityIndex.instance().invalidate(date);
+                if (group.size() == 1) {
+                    // Another writer updated or created one of the seats first.
+                    rejected.increment();
+                    group.get(0).response.resume(Response.status(Response.Status.FORBIDDEN).build());
+                    return;
+                }
+                retriedGroups.increment();
+                for (PendingBooking booking : group) {
+                    write(Collections.singletonList(booking));
+                }
+                return;
+            }
+
+            transactions.increment();
+            committed.add(group.size());
+
+            List<String> labels = new ArrayList<>();
+            for (PendingBooking booking : group) {
+                labels.addAll(booking.details.getSeatLabels());
+            }
+            // The seat state must be updated before the clients hear back, so that they see their own bookings.
+            SeatAvailabilityIndex.instance().markBooked(date, labels);
+            for (PendingBooking booking : group) {
+                UriBuilder uri = booking.bookingsUri.path(Long.toString(booking.booking.getId()));
+                booking.response.resume(Response.created(uri.build()).build());
+            }
+            SubscriptionManager.instance().bookingCommitted(date);
+        }
+
+        /**
+         * Returns true if a commit failed because one of its seats had already been booked: either the seat was found
+         * booked, or the database refused the write as a concurrent update of, or a duplicate of, a seat.
+         */
+        private boolean isSeatConflict(Throwable failure) {
+            for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SeatTakenException || cause instanceof OptimisticLockException
+                        || cause instanceof StaleStateException) {
+                    return true;
+                }
+                if (cause instanceof SQLException) {
+                    // A batch failure holds the failure of each statement in its chain of next exceptions.
+                    for (SQLException e = (SQLException) cause; e != null; e = e.getNextException()) {
+                        if (UNIQUE_VIOLATION.equals(e.getSQLState()) && e.getMessage() != null
+                                && e.getMessage().toUpperCase().contains("SEATS")) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private void commit(List<PendingBooking> group) {
+            List<Long> seatIds = new ArrayList<>();
+            long[] ids = new long[group.size()];
+            for (int i = 0; i < group.size(); i++) {
+                for (String label : group.get(i).details.getSeatLabels()) {
+                    seatIds.add(Seat.idOf(date, TheatreLayout.indexOf(label)));
+                }
+                // Taken before the transaction starts, as reserving a new block of ids uses a transaction of its own.
+                ids[i] = idGenerator.nextId();
+            }
+
+            EntityManager em = PersistenceManager.instance().createEntityManager();
+            try {
+                em.getTransaction().begin();
+                Map<Long, Seat> existing = new HashMap<>();
+                List<Seat> rows = em.createNamedQuery(Seat.FIND_BY_IDS, Seat.class)
+                        .setParameter("ids", seatIds)
+                        .getResultList();
+                for (Seat seat : rows) {
+                    existing.put(seat.getId(), seat);
+                }
+
+                for (int i = 0; i < group.size(); i++) {
+                    PendingBooking pending = group.get(i);
+                    List<Seat> seats = new ArrayList<>();
+                    for (String label : pending.details.getSeatLabels()) {
+                        int index = TheatreLayout.indexOf(label);
+                        Seat seat = existing.get(Seat.idOf(date, index));
+                        if (seat == null) {
+                            // Seats without a row haven't been materialised yet (see ConcertUtils).
+                            seat = new Seat(date, index, true);
+                            em.persist(seat);
+                        } else if (seat.isBooked()) {
+                            // The in-memory state was stale, e.g. another node booked the seat.
+                            throw new SeatTakenException(label);
+                        } else {
+                            seat.setBooked(true);
+                        }
+                        seats.add(seat);
+                    }
+                    User user = em.getReference(User.class, pending.userId);
+                    pending.booking = new Booking(ids[i], pending.details.getConcertId(), date, seats, user);
+                    em.persist(pending.booking);
+                }
+                em.getTransaction().commit();
+            } finally {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+        }
+    }
+}
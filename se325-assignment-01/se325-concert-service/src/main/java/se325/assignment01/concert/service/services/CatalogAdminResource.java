@@ -0,0 +1,50 @@
+package se325.assignment01.concert.service.services;
+
+import javax.ws.rs.DELETE;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * This service lets operators invalidate the cached catalog after changing concerts or performers in the database
+ * directly, which is the only way the catalog changes. Each invalidation clears both the catalog cache and Hibernate's
+ * second-level cache (see {@link CatalogCache}).
+ */
+@Path("/concert-service-admin")
+public class CatalogAdminResource {
+
+    /***
+     * Invalidates a concert, and the listings that include it.
+     * @param id The concert id
+     * @return Response 204 No Content
+     */
+    @DELETE
+    @Path("/catalog-cache/concerts/{id}")
+    public Response invalidateConcert(@PathParam("id") long id) {
+        CatalogCache.instance().invalidateConcert(id);
+        return Response.noContent().build();
+    }
+
+    /***
+     * Invalidates a performer, and the concerts and listings that include it.
+     * @param id The performer id
+     * @return Response 204 No Content
+     */
+    @DELETE
+    @Path("/catalog-cache/performers/{id}")
+    public Response invalidatePerformer(@PathParam("id") long id) {
+        CatalogCache.instance().invalidatePerformer(id);
+        return Response.noContent().build();
+    }
+
+    /***
+     * Invalidates the whole catalog.
+     * @return Response 204 No Content
+     */
+    @DELETE
+    @Path("/catalog-cache")
+    public Response invalidateAll() {
+        CatalogCache.instance().invalidateAll();
+        return Response.noContent().build();
+    }
+}
@@ -0,0 +1,255 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.ConcertDTO;
+import se325.assignment01.concert.common.dto.ConcertSummaryDTO;
+import se325.assignment01.concert.common.dto.PerformerDTO;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.domain.Performer;
+import se325.assignment01.concert.service.mapper.ConcertMapper;
+import se325.assignment01.concert.service.util.ExpiringCache;
+import se325.assignment01.concert.service.util.ServiceConfig;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Singleton class that caches the mapped DTOs for concerts and performers. The catalog is read on almost every request
+ * but rarely changes, so entries are loaded from the database on first use and then served from memory until they
+ * expire or are invalidated.
+ * <p>
+ * The cache is bounded by the "concert.catalog.cache.maxEntries" and "concert.catalog.cache.ttlSeconds" settings (see
+ * {@link ServiceConfig}). Anything that changes catalog data must call one of the invalidate methods once its
+ * transaction has committed. These also evict the catalog from Hibernate's second-level cache, so the DTOs aren't
+ * reloaded from stale entities. Returned DTOs are shared, and must not be modified.
+ * <p>
+ * Every invalidation also moves the catalog on to a new version, which identifies the state of the catalog for HTTP
+ * validation (see {@link #getVersionTag()}).
+ * <p>
+ * Alongside the DTOs, the cache holds the serialised (and possibly compressed) response bodies written for catalog
+ * requests, bounded by "concert.catalog.payloadCache.maxEntries". These are keyed by the request and the catalog
+ * version, and are dropped on every invalidation.
+ */
+public class CatalogCache {
+    private static final String CONCERTS = "concerts";
+    private static final String SUMMARIES = "summaries";
+    private static final String PERFORMERS = "performers";
+    private static final String DATES = "dates";
+
+    private static CatalogCache _instance = null;
+
+    private final ExpiringCache<Long, ConcertDTO> concerts;
+    private final ExpiringCache<Long, PerformerDTO> performers;
+    private final ExpiringCache<String, Object> listings;
+    private final ExpiringCache<String, byte[]> payloads;
+
+    // Versions restart with the service, so they are qualified by when it started.
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+
+    protected CatalogCache() {
+        int maxEntries = ServiceConfig.getInt("concert.catalog.cache.maxEntries", 1000);
+        long ttlSeconds = ServiceConfig.getLong("concert.catalog.cache.ttlSeconds", 300);
+        concerts = new ExpiringCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+        performers = new ExpiringCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+        listings = new ExpiringCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+        payloads = new ExpiringCache<>(ServiceConfig.getInt("concert.catalog.payloadCache.maxEntries", 500),
+                ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized CatalogCache instance() {
+        if (_instance == null) {
+            _instance = new CatalogCache();
+        }
+        return _instance;
+    }
+
+    /***
+     * @return All concerts, ordered by id
+     */
+    public List<ConcertDTO> getConcerts() {
+        return listing(CONCERTS, () -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                List<ConcertDTO> dtos = new ArrayList<>();
+                for (Concert concert : em.createNamedQuery(Concert.FIND_ALL, Concert.class)
+                        .getResultList()) {
+                    dtos.add(ConcertMapper.toConcertDTO(concert));
+                }
+                return Collections.unmodifiableList(dtos);
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /***
+     * @return Summaries of all concerts, ordered by id
+     */
+    public List<ConcertSummaryDTO> getSummaries() {
+        return listing(SUMMARIES, () -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                return Collections.unmodifiableList(
+                        em.createNamedQuery(Concert.FIND_SUMMARIES, ConcertSummaryDTO.class).getResultList());
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /***
+     * @param id The concert id
+     * @return The concert, or null if there is no concert with the id
+     */
+    public ConcertDTO getConcert(long id) {
+        return concerts.get(id, key -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                Concert concert = em.find(Concert.class, key);
+                return concert == null ? null : ConcertMapper.toConcertDTO(concert);
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /***
+     * @param date A date and time
+     * @return true if any concert is scheduled at the date and time
+     */
+    public boolean isConcertDate(LocalDateTime date) {
+        Set<LocalDateTime> dates = listing(DATES, () -> {
+            Set<LocalDateTime> all = new HashSet<>();
+            for (ConcertDTO concert : getConcerts()) {
+                all.addAll(concert.getDates());
+            }
+            return Collections.unmodifiableSet(all);
+        });
+        return dates.contains(date);
+    }
+
+    /***
+     * @return All performers, ordered by id
+     */
+    public List<PerformerDTO> getPerformers() {
+        return listing(PERFORMERS, () -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                return Collections.unmodifiableList(
+                        em.createNamedQuery(Performer.FIND_DTOS, PerformerDTO.class).getResultList());
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /***
+     * @param id The performer id
+     * @return The performer, or null if there is no performer with the id
+     */
+    public PerformerDTO getPerformer(long id) {
+        return performers.get(id, key -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                List<PerformerDTO> found = em.createNamedQuery(Performer.FIND_DTO, PerformerDTO.class)
+                        .setParameter("id", key)
+                        .getResultList();
+                return found.isEmpty() ? null : found.get(0);
+            } finally {
+                em.close();
+            }
+        });
+    }
+
+    /***
+     * @param key Identifies the request, including the catalog version and content coding
+     * @return The response body previously written for the request, or null if there isn't one
+     */
+    public byte[] getPayload(String key) {
+        return payloads.get(key);
+    }
+
+    /***
+     * Keeps a response body, to be written again for the same request. The bytes must not be modified afterwards.
+     * @param key Identifies the request, including the catalog version and content coding
+     * @param payload The response body
+     */
+    public void putPayload(String key, byte[] payload) {
+        payloads.put(key, payload);
+    }
+
+    /***
+     * Identifies the current version of the catalog. Any change to the catalog must be followed by an invalidation,
+     * which changes the tag, so a client holding data fetched under the current tag still has up-to-date data. Callers
+     * must get the tag before they get the data, so that a concurrent change can only make the tag older than the data,
+     * never newer.
+     * @return An opaque tag for the current version of the catalog
+     */
+    public String getVersionTag() {
+        return bootId + "-" + version.get();
+    }
+
+    /***
+     * Invalidates a concert, along with the listings that include it.
+     * @param id The concert id
+     */
+    public void invalidateConcert(long id) {
+        PersistenceManager.instance().evictConcert(id);
+        version.incrementAndGet();
+        concerts.invalidate(id);
+        listings.invalidateAll();
+        payloads.invalidateAll();
+    }
+
+    /***
+     * Invalidates a performer, along with the concerts and listings that include it.
+     * @param id The performer id
+     */
+    public void invalidatePerformer(long id) {
+        PersistenceManager.instance().evictPerformer(id);
+        version.incrementAndGet();
+        performers.invalidate(id);
+        concerts.invalidateAll();
+        listings.invalidateAll();
+        payloads.invalidateAll();
+    }
+
+    /**
+     * Invalidates everything. Should be called whenever the catalog in the database is re-initialised.
+     */
+    public void invalidateAll() {
+        PersistenceManager.instance().evictCatalog();
+        version.incrementAndGet();
+        concerts.invalidateAll();
+        performers.invalidateAll();
+        listings.invalidateAll();
+        payloads.invalidateAll();
+    }
+
+    /***
+     * @return The hit, miss and eviction counts for each of the caches, keyed by cache name
+     */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        stats.put("concerts", concerts.getStats());
+        stats.put("performers", performers.getStats());
+        stats.put("listings", listings.getStats());
+        stats.put("payloads", payloads.getStats());
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T listing(String key, Supplier<T> loader) {
+        return (T) listings.get(key, k -> loader.get());
+    }
+}
@@ -3,6 +3,8 @@ package se325.assignment01.concert.service.services;
 import javax.ws.rs.ApplicationPath;
 import javax.ws.rs.core.Application;
 
+import se325.assignment01.concert.service.jaxrs.CachedPayloadInterceptor;
+import se325.assignment01.concert.service.jaxrs.CompressionInterceptor;
 import se325.assignment01.concert.service.util.ConcertUtils;
 
 import java.util.HashSet;
@@ -21,6 +23,10 @@ public class ConcertApplication extends Application {
     public ConcertApplication() {
         classes.add(TestResource.class);
         classes.add(ConcertResource.class);
+        classes.add(MetricsResource.class);
+        classes.add(CatalogAdminResource.class);
+        classes.add(CompressionInterceptor.class);
+        classes.add(CachedPayloadInterceptor.class);
         singletons.add(PersistenceManager.instance());
 
         ConcertUtils.initConcerts();
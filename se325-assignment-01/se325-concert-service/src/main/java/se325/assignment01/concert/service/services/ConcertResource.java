@@ -3,11 +3,17 @@ package se325.assignment01.concert.service.services;
 import se325.assignment01.concert.common.dto.*;
 import se325.assignment01.concert.common.types.BookingStatus;
 import se325.assignment01.concert.service.domain.*;
+import se325.assignment01.concert.service.jaxrs.CachedPayload;
+import se325.assignment01.concert.service.jaxrs.CompressionInterceptor;
+import se325.assignment01.concert.service.jaxrs.JsonArrayOutput;
+import se325.assignment01.concert.service.jaxrs.KeysetPage;
 import se325.assignment01.concert.service.jaxrs.LocalDateTimeParam;
 import se325.assignment01.concert.service.mapper.BookingMapper;
-import se325.assignment01.concert.service.mapper.ConcertMapper;
-import se325.assignment01.concert.service.mapper.PerformerMapper;
 import se325.assignment01.concert.service.mapper.SeatMapper;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 
 import javax.persistence.*;
 import javax.ws.rs.*;
@@ -16,80 +22,103 @@ import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeParseException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
+import java.util.function.Function;
 
 @Path("/concert-service")
 public class ConcertResource {
-    // TODO Implement this.
-    private static long idCounter = 0;
-    private static ExecutorService threadPool = Executors.newCachedThreadPool();
+
+    // The number of rows fetched from the database at a time when streaming bookings.
+    private static final int STREAM_FETCH_SIZE = 200;
+
+    @Context
+    private HttpHeaders requestHeaders;
 
     /***
-     * Retrieves the summaries of all the concerts.
-     * @return Response 200 OK message containing a list of ConcertSummeryDTO
+     * Retrieves the summaries of all the concerts, or a page of them if a limit or cursor is given.
+     * @param limit The most summaries to return. Optional.
+     * @param after Only summaries for concerts with greater ids are returned. Optional.
+     * @param uriInfo A UriIfo Object. Automatically bound, used to build the next page's URI.
+     * @param request A Request Object. Automatically bound, used to evaluate If-None-Match.
+     * @return Response:    200 - OK message containing a list of ConcertSummeryDTO. When paginated, the summaries are
+     *                            ordered by id, and a Link with rel="next" is included if there are more.
+     *                      304 - NOT MODIFIED if the client's copy, identified by its ETag, is current.
+     *                      400 - BAD REQUEST if the limit is not positive.
      */
     @GET
     @Path("concerts/summaries")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrieveSummaries(){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        List<Concert> concerts = em.createQuery("select c from Concert c",Concert.class).getResultList();
-        em.close();
-        List<ConcertSummaryDTO> summaries = new LinkedList<>();
-        for(Concert concert : concerts){
-            summaries.add(ConcertMapper.toConcertSummeryDTO(concert));
-        }
-        return Response.ok(summaries).build();
+    @CachedPayload
+    public Response retrieveSummaries(@QueryParam("limit") Integer limit, @QueryParam("after") Long after,
+                                      @Context UriInfo uriInfo, @Context Request request){
+        KeysetPage page = KeysetPage.of(limit, after);
+        EntityTag tag = catalogTag();
+        Response.ResponseBuilder notModified = evaluateCatalogTag(tag, request);
+        if (notModified != null)
+            return notModified.build();
+        List<ConcertSummaryDTO> summaries = CatalogCache.instance().getSummaries();
+        if (page == null)
+            return Response.ok(summaries).tag(tag).build();
+        return page.toResponse(page.select(summaries, ConcertSummaryDTO::getId), ConcertSummaryDTO::getId,
+                Function.identity(), uriInfo).tag(tag).build();
     }
 
     /***
      * Retrieves a Concert matching the id.
      * @param id takes id in the path of the GET request
+     * @param request A Request Object. Automatically bound, used to evaluate If-None-Match.
      * @return Response:    200 - OK if id exist in the database. Containing the ConcertDTO object.
+     *                      304 - NOT MODIFIED if the client's copy, identified by its ETag, is current.
      *                      404 - NOT FOUND if id is not found in the database
      */
     @GET
     @Path("concerts/{id}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrieveConcert(@PathParam("id") long id){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        try {
-            Concert concert = em.find(Concert.class, id); //eager
-            if (concert == null)
-                return Response.status(Response.Status.NOT_FOUND).build();
-            return Response.ok(ConcertMapper.toConcertDTO(concert)).build();
-        }
-        finally {
-            em.close();
-        }
+    @CachedPayload
+    public Response retrieveConcert(@PathParam("id") long id, @Context Request request){
+        // The tag is taken before the lookup, so it can't claim a newer version than the one looked up. A missing
+        // id is answered before evaluating If-None-Match, as any catalog version would otherwise match it.
+        EntityTag tag = catalogTag();
+        ConcertDTO concert = CatalogCache.instance().getConcert(id);
+        if (concert == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        Response.ResponseBuilder notModified = evaluateCatalogTag(tag, request);
+        if (notModified != null)
+            return notModified.build();
+        return Response.ok(concert).tag(tag).build();
     }
 
     /***
-     * Retrieves a list of Concert objects
-     * @return Response: 200 - OK Containing a list of ConcertDTO object.
+     * Retrieves a list of Concert objects, or a page of them if a limit or cursor is given.
+     * @param limit The most concerts to return. Optional.
+     * @param after Only concerts with greater ids are returned. Optional.
+     * @param uriInfo A UriIfo Object. Automatically bound, used to build the next page's URI.
+     * @param request A Request Object. Automatically bound, used to evaluate If-None-Match.
+     * @return Response:    200 - OK Containing a list of ConcertDTO object. When paginated, the concerts are ordered by
+     *                            id, and a Link with rel="next" is included if there are more.
+     *                      304 - NOT MODIFIED if the client's copy, identified by its ETag, is current.
+     *                      400 - BAD REQUEST if the limit is not positive.
      */
     @GET
     @Path("concerts/")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrieveConcerts(){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        try {
-            List<Concert> concerts = em.createQuery("select c from Concert c", Concert.class).getResultList();
-            List<ConcertDTO> dtos = new LinkedList<>();
-            for (Concert concert : concerts) {
-                dtos.add(ConcertMapper.toConcertDTO(concert));
-            }
-            return Response.ok(dtos).build();
-        }
-        finally {
-            em.close();
-        }
+    @CachedPayload
+    public Response retrieveConcerts(@QueryParam("limit") Integer limit, @QueryParam("after") Long after,
+                                     @Context UriInfo uriInfo, @Context Request request){
+        KeysetPage page = KeysetPage.of(limit, after);
+        EntityTag tag = catalogTag();
+        Response.ResponseBuilder notModified = evaluateCatalogTag(tag, request);
+        if (notModified != null)
+            return notModified.build();
+        List<ConcertDTO> dtos = CatalogCache.instance().getConcerts();
+        if (page == null)
+            return Response.ok(dtos).tag(tag).build();
+        return page.toResponse(page.select(dtos, ConcertDTO::getId), ConcertDTO::getId, Function.identity(), uriInfo)
+                .tag(tag).build();
     }
 
     /***
@@ -102,21 +131,20 @@ public class ConcertResource {
     @Path("login")
     @Consumes({MediaType.APPLICATION_JSON})
     public Response login(UserDTO login){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        TypedQuery<User> query = em.createQuery("select u from User u where u.username = :username", User.class);
+        EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+        TypedQuery<User> query = em.createNamedQuery(User.FIND_BY_USERNAME, User.class);
         try {
             User user = query.setParameter("username", login.getUsername()).getSingleResult();
-            user.setHash(user.hashCode());
-            em.merge(user);
-            em.getTransaction().commit();
-            em.close();
-            if(user != null && login.getPassword().equals(user.getPassword())){
-                NewCookie cookie = new NewCookie("auth", String.valueOf(user.hashCode()));
+            if(login.getPassword() != null && login.getPassword().equals(user.getPassword())){
+                String token = SessionStore.instance().createSession(user.getId());
+                NewCookie cookie = new NewCookie("auth", token);
                 return Response.ok().cookie(cookie).build();
             }
         }
         catch (NoResultException e){
+            // Fall through to UNAUTHORIZED.
+        }
+        finally {
             em.close();
         }
         return Response.status(Response.Status.UNAUTHORIZED).build();
@@ -126,7 +154,7 @@ public class ConcertResource {
      * Retrieves a list of all the Seats for a concert on a particular day.
      * @param dateString A String representation of LocalDateTime in from the path of the request
      * @param status A BookingStatus enum for optionally filtering the request from the query
-     * @return Response:    200 - OK if the dateString is valid. Contains requested SeatDTO object
+     * @return Response:    200 - OK if the dateString is valid. Streams the requested SeatDTO objects
      *                      404 - NOT FOUND if the dateString does not exist in the database
      *                      400 - BAD REQUEST if the dateString can not be parsed to a LocalDateTime
      *
@@ -136,93 +164,79 @@ public class ConcertResource {
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_JSON})
     public Response retrieveSeats(@PathParam("date") String dateString, @QueryParam("status") BookingStatus status){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
         try {
             LocalDateTime date = new LocalDateTimeParam(dateString).getLocalDateTime();
-            String concertHQL = "select c from Concert c where :date member c.dates";
-            TypedQuery<Concert> concertQuery = em.createQuery(concertHQL,Concert.class).setParameter("date",date);
-            concertQuery.getSingleResult();
-            String hql = "select s from Seat s where s.date = :date";
-            if (status != BookingStatus.Any)
-                hql += " and s.isBooked = :booked";
-            TypedQuery<Seat> query = em.createQuery(hql, Seat.class);
-            query.setParameter("date", date);
-            if (status != BookingStatus.Any)
-                query.setParameter("booked", status == BookingStatus.Booked);
-            List<Seat> seats = query.getResultList();
-            List<SeatDTO> seatDTOs = new LinkedList<>();
-            for (Seat seat : seats) {
-                seatDTOs.add(SeatMapper.toDTO(seat));
-            }
-            return Response.ok(seatDTOs).build();
-        }
-        catch (NoResultException e){
-            return Response.status(Response.Status.NOT_FOUND).build();
+            if (!CatalogCache.instance().isConcertDate(date))
+                return Response.status(Response.Status.NOT_FOUND).build();
+            BitSet booked = SeatAvailabilityIndex.instance().getBookedSeats(date);
+            return Response.ok(new JsonArrayOutput(generator -> {
+                for (int i = 0; i < TheatreLayout.NUM_SEATS_IN_THEATRE; i++) {
+                    if (status == BookingStatus.Any || booked.get(i) == (status == BookingStatus.Booked))
+                        generator.writeObject(new SeatDTO(TheatreLayout.labelOf(i), TheatreLayout.priceOf(i)));
+                }
+            })).build();
         }
         catch (DateTimeParseException e){
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
-        finally {
-            em.close();
+    }
+
+    /***
+     * Retrieves the number of booked and available seats for a concert on a particular day.
+     * @param dateString A String representation of LocalDateTime in from the path of the request
+     * @return Response:    200 - OK if the dateString is valid. Contains a SeatAvailabilityDTO
+     *                      404 - NOT FOUND if the dateString does not exist in the database
+     *                      400 - BAD REQUEST if the dateString can not be parsed to a LocalDateTime
+     */
+    @GET
+    @Path("seats/{date}/availability")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveSeatAvailability(@PathParam("date") String dateString){
+        try {
+            LocalDateTime date = new LocalDateTimeParam(dateString).getLocalDateTime();
+            if (!CatalogCache.instance().isConcertDate(date))
+                return Response.status(Response.Status.NOT_FOUND).build();
+            return Response.ok(SeatAvailabilityIndex.instance().getAvailability(date)).build();
+        }
+        catch (DateTimeParseException e){
+            return Response.status(Response.Status.BAD_REQUEST).build();
         }
     }
 
     /***
-     * Creates a new booking.
+     * Creates a new booking. Valid requests are handed to the BookingPipeline, which resumes the response once the
+     * booking has been committed or rejected.
+     * @param response AsyncResponse callback for the outcome of the booking.
      * @param details A BookingRequestDTO object containing the booking's details contained in the request.
      * @param uriInfo A UriIfo Object. Automatically bound, containing info about the request's URI.
      * @param cookie A Cookie object. Contains the authentication token.
-     * @return Response:    201 - CREATED if Booking was successful. Contains the URI of the Booking.
-     *                      400 - BAD REQUEST if the request is not formatted correctly.
-     *                      401 - UNAUTHORISED if the client is not logged in.
-     *                      403 - FORBIDDEN if on of the seat in the booking is already booked.
+     * Response:    201 - CREATED if Booking was successful. Contains the URI of the Booking.
+     *              400 - BAD REQUEST if the request is not formatted correctly, including when it asks for no seats or
+     *                    for the same seat more than once.
+     *              401 - UNAUTHORISED if the client is not logged in.
+     *              403 - FORBIDDEN if on of the seat in the booking is already booked.
      */
     @POST
     @Path("bookings")
     @Consumes({MediaType.APPLICATION_JSON})
-    public Response createBooking(BookingRequestDTO details, @Context UriInfo uriInfo, @CookieParam("auth") Cookie cookie){
-        Response response = null;
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        try {
-            if(cookie == null)
-                throw new WebApplicationException(Response.Status.UNAUTHORIZED);
-            TypedQuery<Concert> cQuery   = em.createQuery("select c from Concert c where c.id = :cid", Concert.class);
-            Concert concert = cQuery.setParameter("cid", details.getConcertId()).getSingleResult();
-            if(!concert.getDates().contains(details.getDate()))
-                throw new WebApplicationException(Response.Status.BAD_REQUEST);
-            TypedQuery<User> userQuery = em.createQuery("select u from User u where u.hash = :hash",User.class);
-            User user = userQuery.setParameter("hash",Integer.parseInt(cookie.getValue())).getSingleResult();
-            String hql = "select s from Seat s where s.date = :date and s.label in (:seats)";
-            TypedQuery<Seat> query = em.createQuery(hql,Seat.class).setParameter("date",details.getDate());
-            List<Seat> available = query.setParameter("seats",details.getSeatLabels()).getResultList();
-            if(available.size() != details.getSeatLabels().size())
-                throw new WebApplicationException(Response.Status.BAD_REQUEST);
-            for(Seat seat: available){
-                if(seat.isBooked())
-                    throw new WebApplicationException(Response.Status.FORBIDDEN);
-                seat.setBooked(true);
-                em.merge(seat);
-            }
-            Booking booking = new Booking(idCounter++, details.getConcertId(),details.getDate(),available,user);
-            em.persist(booking);
-            em.getTransaction().commit();
-            //updateSubscribers(details.getDate(),details.getConcertId());
-            UriBuilder uriBuilder = uriInfo.getAbsolutePathBuilder();
-            uriBuilder.path(Long.toString(booking.getId()));
-            response = Response.created(uriBuilder.build()).build();
-        }
-        catch (NoResultException e) {
+    public void createBooking(@Suspended AsyncResponse response, BookingRequestDTO details,
+                              @Context UriInfo uriInfo, @CookieParam("auth") Cookie cookie){
+        Long userId = authenticate(cookie);
+        if(userId == null)
+            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+        ConcertDTO concert = CatalogCache.instance().getConcert(details.getConcertId());
+        if(concert == null || !concert.getDates().contains(details.getDate()))
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        if(details.getSeatLabels() == null || details.getSeatLabels().isEmpty())
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        Set<String> labels = new HashSet<>(details.getSeatLabels());
+        if(labels.size() != details.getSeatLabels().size())
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        for(String label : labels){
+            if(TheatreLayout.indexOf(label) < 0)
+                throw new WebApplicationException(Response.Status.BAD_REQUEST);
         }
-        catch (WebApplicationException e){
-            em.getTransaction().rollback();
-            response =  e.getResponse();
-        }
-        System.out.println("Responce is: " + response.getStatus());
-        em.close();
-        return response;
+        BookingPipeline.instance().submit(details, userId, uriInfo.getAbsolutePathBuilder(), response);
     }
 
     /***
@@ -238,93 +252,148 @@ public class ConcertResource {
     @Path("bookings/{id}")
     @Produces({MediaType.APPLICATION_JSON})
     public Response retrieveBooking(@PathParam("id") long id, @CookieParam("auth") Cookie cookie){
-        if(cookie == null)
+        Long userId = authenticate(cookie);
+        if(userId == null)
             return Response.status(Response.Status.UNAUTHORIZED).build();
-        int hash = Integer.parseInt(cookie.getValue());
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        Booking booking = em.find(Booking.class, id);
-        User user = em.find(User.class, booking.getUser().getId());
-        em.close();
-        if(user == null||user.hashCode() != hash)
-            return Response.status(Response.Status.FORBIDDEN).build();
-        return Response.ok(BookingMapper.toDTO(booking)).build();
+        EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+        try {
+            List<Booking> found = em.createNamedQuery(Booking.FIND, Booking.class)
+                    .setParameter("id", id)
+                    .getResultList();
+            if(found.isEmpty())
+                return Response.status(Response.Status.NOT_FOUND).build();
+            Booking booking = found.get(0);
+            if(booking.getUser().getId() != userId)
+                return Response.status(Response.Status.FORBIDDEN).build();
+            return Response.ok(BookingMapper.toDTO(booking)).build();
+        } finally {
+            em.close();
+        }
     }
 
     /***
-     * Retrieved a list of all Bookings made by a user.
+     * Retrieved a list of all Bookings made by a user, or a page of them if a limit or cursor is given.
      * @param cookie A Cookie object. Contains the authentication token.
-     * @return Response:    200 - OK if the client is authenticated correctly. Contains the list of ConcertDTOs
+     * @param limit The most bookings to return. Optional.
+     * @param after Only bookings with greater ids are returned. Optional.
+     * @param uriInfo A UriIfo Object. Automatically bound, used to build the next page's URI.
+     * @return Response:    200 - OK if the client is authenticated correctly. Streams the user's BookingDTOs as they are
+     *                            read from the database. When paginated, the bookings are ordered by id, and a Link
+     *                            with rel="next" is included if there are more.
+     *                      400 - BAD REQUEST if the limit is not positive.
      *                      401 - UNAUTHORISED if the client is not logged in.
      */
     @GET
     @Path("bookings")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrieveAllBookings(@CookieParam("auth") Cookie cookie){
-        if(cookie == null)
+    public Response retrieveAllBookings(@CookieParam("auth") Cookie cookie, @QueryParam("limit") Integer limit,
+                                        @QueryParam("after") Long after, @Context UriInfo uriInfo){
+        Long userId = authenticate(cookie);
+        if(userId == null)
             return Response.status(Response.Status.UNAUTHORIZED).build();
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        int hash = Integer.parseInt(cookie.getValue());
-        TypedQuery<User> userQuery = em.createQuery("select u from User u where u.hash = :hash",User.class);
-        User user = userQuery.setParameter("hash",hash).getSingleResult();
-        TypedQuery<Booking> query = em.createQuery("select b from Booking b where b.user = :user",Booking.class);
-        List<Booking> bookings = query.setParameter("user",user).getResultList();
-        em.close();
-        List<BookingDTO> bookingDTOs = new LinkedList<>();
-        for (Booking booking : bookings) {
-            bookingDTOs.add(BookingMapper.toDTO(booking));
+        KeysetPage page = KeysetPage.of(limit, after);
+        if (page != null) {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try {
+                // Select the page by id first, as the fetch join in FIND_BY_IDS can't be limited in the database.
+                List<Long> ids = em.createNamedQuery(Booking.FIND_IDS_BY_USER_AFTER, Long.class)
+                        .setParameter("userId", userId)
+                        .setParameter("after", page.getAfter())
+                        .setMaxResults(page.getLimit() + 1)
+                        .getResultList();
+                List<Booking> bookings = ids.isEmpty() ? new ArrayList<>()
+                        : em.createNamedQuery(Booking.FIND_BY_IDS, Booking.class)
+                        .setParameter("ids", ids)
+                        .getResultList();
+                return page.toResponse(bookings, Booking::getId, BookingMapper::toDTO, uriInfo).build();
+            } finally {
+                em.close();
+            }
         }
-        return Response.ok(bookingDTOs).build();
+        return Response.ok(new JsonArrayOutput(generator -> {
+            EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+            try (ScrollableResults rows = em
+                    .createNamedQuery(Booking.FIND_SEAT_ROWS_BY_USER, Object[].class)
+                    .setParameter("userId", userId)
+                    .unwrap(org.hibernate.query.Query.class)
+                    .setFetchSize(STREAM_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                // Rows are ordered by booking, so each booking is written once its last seat has been read.
+                BookingDTO booking = null;
+                long bookingId = 0;
+                while (rows.next()) {
+                    if (booking == null || rows.getLong(0) != bookingId) {
+                        if (booking != null)
+                            generator.writeObject(booking);
+                        bookingId = rows.getLong(0);
+                        booking = new BookingDTO(rows.getLong(1), (LocalDateTime) rows.get(2), new ArrayList<>());
+                    }
+                    booking.getSeats().add(SeatMapper.toDTO(rows.getLong(3)));
+                }
+                if (booking != null)
+                    generator.writeObject(booking);
+            } finally {
+                em.close();
+            }
+        })).build();
     }
 
     /***
-     * Retrieves a list of all Performers
-     * @return Response:    200 - OK Contains a list of all PerformerDTOs.
+     * Retrieves a list of all Performers, or a page of them if a limit or cursor is given.
+     * @param limit The most performers to return. Optional.
+     * @param after Only performers with greater ids are returned. Optional.
+     * @param uriInfo A UriIfo Object. Automatically bound, used to build the next page's URI.
+     * @param request A Request Object. Automatically bound, used to evaluate If-None-Match.
+     * @return Response:    200 - OK Contains a list of all PerformerDTOs. When paginated, the performers are ordered
+     *                            by id, and a Link with rel="next" is included if there are more.
+     *                      304 - NOT MODIFIED if the client's copy, identified by its ETag, is current.
+     *                      400 - BAD REQUEST if the limit is not positive.
      */
     @GET
     @Path("performers")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrieveAllPerformers(){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        TypedQuery<Performer> query = em.createQuery("select p from Performer p",Performer.class);
-        List<Performer> performers = query.getResultList();
-        em.close();
-        List<PerformerDTO> performerDTOs = new LinkedList<>();
-        for (Performer performer: performers) {
-            performerDTOs.add(PerformerMapper.toDTO(performer));
-        }
-        return Response.ok(performerDTOs).build();
+    @CachedPayload
+    public Response retrieveAllPerformers(@QueryParam("limit") Integer limit, @QueryParam("after") Long after,
+                                          @Context UriInfo uriInfo, @Context Request request){
+        KeysetPage page = KeysetPage.of(limit, after);
+        EntityTag tag = catalogTag();
+        Response.ResponseBuilder notModified = evaluateCatalogTag(tag, request);
+        if (notModified != null)
+            return notModified.build();
+        List<PerformerDTO> performerDTOs = CatalogCache.instance().getPerformers();
+        if (page == null)
+            return Response.ok(performerDTOs).tag(tag).build();
+        return page.toResponse(page.select(performerDTOs, PerformerDTO::getId), PerformerDTO::getId,
+                Function.identity(), uriInfo).tag(tag).build();
     }
 
     /***
      * Retrieves a Performer
      * @param id The id of the Performer request
+     * @param request A Request Object. Automatically bound, used to evaluate If-None-Match.
      * @return Response: 200 - OK if the Performer is found in the database. Contains the PerformerDTO object.
+     *                   304 - NOT MODIFIED if the client's copy, identified by its ETag, is current.
      *                   404 - NOT FOUND if the Performer is not foudn in the database.
      */
     @GET
     @Path("performers/{id}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response retrievePerformer(@PathParam("id") long id){
-        Response response;
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        try {
-            em.getTransaction().begin();
-            TypedQuery<Performer> query = em.createQuery("select p from Performer p where p.id = :id", Performer.class);
-            Performer performer = query.setParameter("id", id).getSingleResult();
-            response = Response.ok(PerformerMapper.toDTO(performer)).build();
-        }
-        catch (NoResultException e){
-            response = Response.status(Response.Status.NOT_FOUND).build();
-        }
-        em.close();
-        return response;
+    @CachedPayload
+    public Response retrievePerformer(@PathParam("id") long id, @Context Request request){
+        // As in retrieveConcert, a missing id is answered before evaluating If-None-Match.
+        EntityTag tag = catalogTag();
+        PerformerDTO performer = CatalogCache.instance().getPerformer(id);
+        if (performer == null)
+            return Response.status(Response.Status.NOT_FOUND).build();
+        Response.ResponseBuilder notModified = evaluateCatalogTag(tag, request);
+        if (notModified != null)
+            return notModified.build();
+        return Response.ok(performer).tag(tag).build();
     }
 
     /***
-     * Creates a new Subscription for Concert seat availability
+     * Creates a new Subscription for Concert seat availability. The response is resumed with a
+     * ConcertInfoNotificationDTO once the requested percentage of seats for the date have been booked.
      * @param response AsyncResponse callback for future response.
      * @param subscription ConcertInfoSubscriptionDTO contains the details of the subscription.
      * @param cookie A Cookie object. Contains the authentication token.
@@ -335,117 +404,46 @@ public class ConcertResource {
     @Produces({MediaType.APPLICATION_JSON})
     public void subscribeConcertInfo(@Suspended AsyncResponse response,
                                      ConcertInfoSubscriptionDTO subscription, @CookieParam("auth") Cookie cookie) {
-        if (cookie == null)
+        if (authenticate(cookie) == null)
             throw new WebApplicationException(Response.Status.UNAUTHORIZED);
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        Concert concert = em.find(Concert.class, subscription.getConcertId());
-        em.close();
+        ConcertDTO concert = CatalogCache.instance().getConcert(subscription.getConcertId());
         if (concert == null)
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
         if (!concert.getDates().contains(subscription.getDate()))
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
-        long id = subscription.getConcertId();
-        int percentage = subscription.getPercentageBooked();
-        LocalDateTime date = subscription.getDate();
-        int numSeats = getNumSeats(date,null);
-        threadPool.submit( ()-> {
-            while(true){
-                int numAvailSeats = getNumSeats(date,"s.isBooked = false");
-                if(percentage > (numAvailSeats*100)/numSeats) {
-                    response.resume(new ConcertInfoNotificationDTO(numAvailSeats));
-                    return;
-                }
-                try {
-                    Thread.sleep(1000);
-                }
-                catch (InterruptedException e){
-                    response.cancel();
-                    return;
-                }
-            }
-        });
+        SubscriptionManager.instance().subscribe(subscription.getDate(), subscription.getPercentageBooked(), response);
+    }
+
+    /***
+     * Helper function for conditional GETs of catalog resources. Every representation of the catalog is tagged with
+     * the catalog's version, so a client's ETag matches for as long as the catalog hasn't changed since it was fetched.
+     * The tag must be got before the catalog data (see CatalogCache.getVersionTag()).
+     * @return A strong ETag for the current version of the catalog.
+     */
+    private EntityTag catalogTag(){
+        return new EntityTag(CatalogCache.instance().getVersionTag());
     }
 
     /***
-     * Helper function to get the current number of seats.
-     * @param date Date for the Concert to check the date.
-     * @param condition Additional HQL condition for the query. OPTIONAL null for no additional condition.
-     * @return The number of seats for the date matching condition.
+     * Helper function to evaluate If-None-Match for a catalog resource. The client's ETag is compared with the tag of
+     * the representation it would be sent, which is suffixed with the content coding if the response is compressed.
+     * @param tag The catalog's ETag, from catalogTag()
+     * @param request The request
+     * @return A 304 Not Modified response builder if the client's copy is current, otherwise null
      */
-    private int getNumSeats(LocalDateTime date, String condition){
-        EntityManager em = PersistenceManager.instance().createEntityManager();
-        em.getTransaction().begin();
-        String hql = "select s from Seat s where s.date = :date ";
-        if(condition != null)
-            hql += "and "+condition;
-        TypedQuery<Seat> query = em.createQuery(hql,Seat.class);
-        List<Seat> seats = query.setParameter("date",date).getResultList();
-        em.close();
-        return seats.size();
+    private Response.ResponseBuilder evaluateCatalogTag(EntityTag tag, Request request){
+        return request.evaluatePreconditions(
+                CompressionInterceptor.codedTag(tag, CompressionInterceptor.negotiate(requestHeaders)));
     }
 
     /***
-     * Subscription method using callback instead of polling.
+     * Helper function to identify the user making a request.
+     * @param cookie The "auth" Cookie sent with the request, or null if none was sent.
+     * @return The id of the user the token in the cookie was issued to, or null if the client isn't logged in.
      */
-//    @POST
-//    @Path("subscribe/concertInfo")
-//    @Consumes({MediaType.APPLICATION_JSON})
-//    @Produces({MediaType.APPLICATION_JSON})
-//    public void subscribeConcertInfo(@Suspended AsyncResponse response,
-//                                     ConcertInfoSubscriptionDTO subscription, @CookieParam("auth") Cookie cookie){
-//        if(cookie == null)
-//            throw new WebApplicationException(Response.Status.UNAUTHORIZED);
-//        EntityManager em = PersistenceManager.instance().createEntityManager();
-//        em.getTransaction().begin();
-//        Concert concert = em.find(Concert.class, subscription.getConcertId());
-//        em.close();
-//        if(concert == null)
-//            throw new WebApplicationException(Response.Status.BAD_REQUEST);
-//        if(!concert.getDates().contains(subscription.getDate()))
-//            throw new WebApplicationException(Response.Status.BAD_REQUEST);
-//        long id = subscription.getConcertId();
-//        int percentage = subscription.getPercentageBooked();
-//        synchronized (subscriberSet) {
-//            subscriberSet.add(new Subscriber(id, percentage, response));
-//        }
-//    }
-//
-//    private void updateSubscribers(LocalDateTime date, long id){
-//        EntityManager em = PersistenceManager.instance().createEntityManager();
-//        em.getTransaction().begin();
-//        String hql = "select s from Seat s where s.date = :date";
-//        TypedQuery<Seat> query = em.createQuery(hql,Seat.class).setParameter("date",date);
-//        List<Seat> seats = query.getResultList();
-//        em.close();
-//        int available = 0;
-//        for(Seat seat : seats){
-//            if(!seat.isBooked())
-//                available++;
-//        }
-//        synchronized (subscriberSet) {
-//            for (Subscriber subscriber : subscriberSet){
-//                if(subscriber.id == id)
-//                    subscriber.update(seats.size(),available);
-//            }
-//        }
-//    }
-//
-//    private class Subscriber{
-//        long id;
-//        int percentage;
-//        AsyncResponse response;
-//        Subscriber(long id, int percentage, AsyncResponse response){
-//            this.id = id;
-//            this.percentage = percentage;
-//            this.response = response;
-//        }
-//        void update(int numSeats, int numAvailable){
-//            if((numAvailable*100)/numSeats < percentage) {
-//                threadPool.submit(() ->{
-//                    response.resume(new ConcertInfoNotificationDTO(numAvailable));
-//                });
-//            }
-//        }
-//    }
+    private Long authenticate(Cookie cookie){
+        if(cookie == null)
+            return null;
+        return SessionStore.instance().getUserId(cookie.getValue());
+    }
 }
@@ -0,0 +1,75 @@
+package se325.assignment01.concert.service.services;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how long requests wait to acquire a connection from the JDBC connection pool, and how long they hold it.
+ * An instance is registered with the pool when the EntityManagerFactory is created (see {@link PersistenceManager}),
+ * and the pool reports each acquisition and release to it.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+    private volatile PoolStats poolStats;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder usages = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+
+    @Override
+    public MetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolStats = poolStats;
+        return new MetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usages.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /***
+     * @return The pool's current active, idle and total connection counts and the number of threads waiting for a
+     * connection, along with the acquisition wait times, usage times and timeouts recorded since the pool started
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        PoolStats pool = poolStats;
+        if (pool != null) {
+            stats.put("active", (long) pool.getActiveConnections());
+            stats.put("idle", (long) pool.getIdleConnections());
+            stats.put("total", (long) pool.getTotalConnections());
+            stats.put("waiting", (long) pool.getPendingThreads());
+        }
+        long acquired = acquisitions.sum();
+        long used = usages.sum();
+        stats.put("acquisitions", acquired);
+        stats.put("meanWaitMicros", acquired == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(acquireNanos.sum() / acquired));
+        stats.put("maxWaitMicros", TimeUnit.NANOSECONDS.toMicros(maxAcquireNanos.get()));
+        stats.put("timeouts", timeouts.sum());
+        stats.put("meanUsageMillis", used == 0 ? 0 : usageMillis.sum() / used);
+        return stats;
+    }
+}
@@ -0,0 +1,18 @@
+package se325.assignment01.concert.service.services;
+
+/**
+ * Hands out ids for new entities. Implementations must be safe to call from any number of threads, and must never
+ * hand out the same id twice while the database they allocate from is in use.
+ */
+public interface IdGenerator {
+
+    /***
+     * @return An id that hasn't been handed out before
+     */
+    long nextId();
+
+    /**
+     * Discards any ids held in memory. Should be called whenever the database is re-initialised.
+     */
+    void reset();
+}
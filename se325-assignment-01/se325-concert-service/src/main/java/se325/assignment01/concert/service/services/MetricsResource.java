@@ -0,0 +1,103 @@
+package se325.assignment01.concert.service.services;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * This service exposes runtime statistics about the concert service, for monitoring and load testing.
+ */
+@Path("/concert-service-metrics")
+public class MetricsResource {
+
+    /***
+     * Retrieves the hit and miss counts for the catalog cache.
+     * @return Response 200 OK containing the statistics for each cache, keyed by cache name
+     */
+    @GET
+    @Path("/catalog-cache")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveCatalogCacheStats() {
+        return Response.ok(CatalogCache.instance().getStats()).build();
+    }
+
+    /***
+     * Retrieves the hit and miss counts for the session store.
+     * @return Response 200 OK containing the session store statistics
+     */
+    @GET
+    @Path("/sessions")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveSessionStats() {
+        return Response.ok(SessionStore.instance().getStats()).build();
+    }
+
+    /***
+     * Retrieves the transaction and booking counts for the booking pipeline.
+     * @return Response 200 OK containing the booking pipeline statistics
+     */
+    @GET
+    @Path("/bookings")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveBookingStats() {
+        return Response.ok(BookingPipeline.instance().getStats()).build();
+    }
+
+    /***
+     * Retrieves the connection counts and wait times for the JDBC connection pool.
+     * @return Response 200 OK containing the connection pool statistics
+     */
+    @GET
+    @Path("/connection-pool")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveConnectionPoolStats() {
+        return Response.ok(PersistenceManager.instance().getConnectionPoolStats()).build();
+    }
+
+    /***
+     * Retrieves the hit and miss counts for Hibernate's second-level entity and query caches.
+     * @return Response 200 OK containing the statistics for each cache region, keyed by region name
+     */
+    @GET
+    @Path("/entity-cache")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveEntityCacheStats() {
+        return Response.ok(PersistenceManager.instance().getEntityCacheStats()).build();
+    }
+
+    /***
+     * Retrieves the number of statements the service has sent to the database.
+     * @return Response 200 OK containing the statement and query counts
+     */
+    @GET
+    @Path("/statements")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveStatementStats() {
+        return Response.ok(PersistenceManager.instance().getStatementStats()).build();
+    }
+
+    /***
+     * Retrieves the number of concert dates held in the seat availability index, and the memory used for them.
+     * @return Response 200 OK containing the seat state statistics
+     */
+    @GET
+    @Path("/seat-state")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveSeatStateStats() {
+        return Response.ok(SeatAvailabilityIndex.instance().getStats()).build();
+    }
+
+    /***
+     * Retrieves the number of outstanding concert info subscriptions.
+     * @return Response 200 OK containing the subscription statistics
+     */
+    @GET
+    @Path("/subscriptions")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response retrieveSubscriptionStats() {
+        return Response.ok(SubscriptionManager.instance().getStats()).build();
+    }
+
+}
@@ -1,8 +1,25 @@
 package se325.assignment01.concert.service.services;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Cache;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import se325.assignment01.concert.service.domain.Concert;
+import se325.assignment01.concert.service.domain.Performer;
+import se325.assignment01.concert.service.util.ServiceConfig;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Singleton class that manages an EntityManagerFactory. When a
@@ -14,21 +31,51 @@ import javax.persistence.Persistence;
  * persistence context, it should call the PersistentManager's
  * createEntityManager() method to acquire one.
  * <p>
- * This class is complete - you do not need to modify it.
+ * Connections are drawn from a bounded HikariCP pool. The pool and database
+ * are configured by the following settings (see {@link ServiceConfig}):
+ * <ul>
+ *     <li>"concert.db.url" - the JDBC URL, by default the embedded H2 database</li>
+ *     <li>"concert.db.queryCacheSize" - the number of prepared statements H2
+ *     caches per connection, so repeated queries aren't re-parsed</li>
+ *     <li>"concert.db.pool.maxSize" and "concert.db.pool.minIdle" - the most
+ *     connections the pool will open, and the fewest idle ones it keeps</li>
+ *     <li>"concert.db.pool.connectionTimeoutMs" - how long a request waits for
+ *     a connection before failing</li>
+ *     <li>"concert.db.pool.idleTimeoutMs" and "concert.db.pool.maxLifetimeMs" -
+ *     when idle and old connections are retired</li>
+ * </ul>
  */
 public class PersistenceManager {
     private static PersistenceManager _instance = null;
 
+    private static final String PERSISTENCE_UNIT = "se325.assignment01.concert";
+    private static final String DEFAULT_URL = "jdbc:h2:~/test;mv_store=false";
+
     private EntityManagerFactory entityManagerFactory;
+    private ConnectionPoolMetrics poolMetrics;
 
     protected PersistenceManager() {
-        entityManagerFactory = Persistence.createEntityManagerFactory("se325.assignment01.concert");
+        createEntityManagerFactory();
     }
 
     public EntityManager createEntityManager() {
         return entityManagerFactory.createEntityManager();
     }
 
+    /***
+     * Creates an EntityManager for reading only. Entities it loads are read-only, so Hibernate doesn't keep snapshots
+     * of them for dirty checking, and it never flushes. Callers should query it without beginning a transaction, so no
+     * transaction or locks are held while they map the results.
+     * @return A new EntityManager, which the caller must close
+     */
+    public EntityManager createReadOnlyEntityManager() {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        return em;
+    }
+
     public static PersistenceManager instance() {
         if (_instance == null) {
             _instance = new PersistenceManager();
@@ -39,7 +86,123 @@ public class PersistenceManager {
     // FOR TESTING ONLY! Will wipe the database.
     public void reset() {
         entityManagerFactory.close();
-        entityManagerFactory = Persistence.createEntityManagerFactory("se325.assignment01.concert");
+        createEntityManagerFactory();
+    }
+
+    /***
+     * Evicts a concert, and its dates and performers, from the second-level cache, along with the cached query results.
+     * @param id The concert id
+     */
+    public void evictConcert(long id) {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictEntity(Concert.class, id);
+        cache.evictCollection(Concert.class.getName() + ".dates", id);
+        cache.evictCollection(Concert.class.getName() + ".performers", id);
+        cache.evictQueryRegions();
+    }
+
+    /***
+     * Evicts a performer from the second-level cache, along with the concerts' performer collections that may include it
+     * and the cached query results.
+     * @param id The performer id
+     */
+    public void evictPerformer(long id) {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictEntity(Performer.class, id);
+        cache.evictCollectionRegion(Concert.class.getName() + ".performers");
+        cache.evictQueryRegions();
+    }
+
+    /***
+     * Evicts every concert and performer from the second-level cache, along with the cached query results.
+     */
+    public void evictCatalog() {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictEntityRegion(Concert.class);
+        cache.evictCollectionRegion(Concert.class.getName() + ".dates");
+        cache.evictCollectionRegion(Concert.class.getName() + ".performers");
+        cache.evictEntityRegion(Performer.class);
+        cache.evictQueryRegions();
+    }
+
+    /***
+     * @return The connection pool's current connection counts, and the wait times recorded since it started
+     */
+    public Map<String, Long> getConnectionPoolStats() {
+        return poolMetrics.getStats();
+    }
+
+    /***
+     * @return The hit, miss and put counts and current size of each second-level cache region, keyed by region name,
+     * along with the query cache counts under "queries"
+     */
+    public Map<String, Map<String, Long>> getEntityCacheStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(region);
+            Map<String, Long> regionStats = new LinkedHashMap<>();
+            regionStats.put("hits", regionStatistics.getHitCount());
+            regionStats.put("misses", regionStatistics.getMissCount());
+            regionStats.put("puts", regionStatistics.getPutCount());
+            regionStats.put("size", regionStatistics.getElementCountInMemory());
+            stats.put(region, regionStats);
+        }
+        Map<String, Long> queryStats = new LinkedHashMap<>();
+        queryStats.put("hits", statistics.getQueryCacheHitCount());
+        queryStats.put("misses", statistics.getQueryCacheMissCount());
+        queryStats.put("puts", statistics.getQueryCachePutCount());
+        stats.put("queries", queryStats);
+        return stats;
+    }
+
+    /***
+     * @return The number of JDBC statements prepared, queries executed, and entities and collections loaded since the
+     * EntityManagerFactory was created
+     */
+    public Map<String, Long> getStatementStats() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("prepared", statistics.getPrepareStatementCount());
+        stats.put("queries", statistics.getQueryExecutionCount());
+        stats.put("entitiesLoaded", statistics.getEntityLoadCount());
+        stats.put("collectionsFetched", statistics.getCollectionFetchCount());
+        return stats;
+    }
+
+    private void createEntityManagerFactory() {
+        entityManagerFactory = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, connectionProperties());
+
+        // The pool starts with the factory, so its metrics can only be registered afterwards.
+        poolMetrics = new ConnectionPoolMetrics();
+        DataSource dataSource = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry()
+                .getService(ConnectionProvider.class).unwrap(DataSource.class);
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).setMetricsTrackerFactory(poolMetrics);
+        }
+    }
+
+    private static Map<String, Object> connectionProperties() {
+        String url = ServiceConfig.getString("concert.db.url", DEFAULT_URL);
+        if (url.startsWith("jdbc:h2:") && !url.toUpperCase().contains(";QUERY_CACHE_SIZE=")) {
+            url += ";QUERY_CACHE_SIZE=" + ServiceConfig.getInt("concert.db.queryCacheSize", 64);
+        }
+
+        // HikariCP settings must be passed as strings.
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", url);
+        properties.put("hibernate.hikari.poolName", "concert-db");
+        properties.put("hibernate.hikari.maximumPoolSize",
+                Integer.toString(ServiceConfig.getInt("concert.db.pool.maxSize", 20)));
+        properties.put("hibernate.hikari.minimumIdle",
+                Integer.toString(ServiceConfig.getInt("concert.db.pool.minIdle", 5)));
+        properties.put("hibernate.hikari.connectionTimeout",
+                Long.toString(ServiceConfig.getLong("concert.db.pool.connectionTimeoutMs", 30000)));
+        properties.put("hibernate.hikari.idleTimeout",
+                Long.toString(ServiceConfig.getLong("concert.db.pool.idleTimeoutMs", 600000)));
+        properties.put("hibernate.hikari.maxLifetime",
+                Long.toString(ServiceConfig.getLong("concert.db.pool.maxLifetimeMs", 1800000)));
+        return properties;
     }
 
 }
@@ -0,0 +1,127 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.SeatAvailabilityDTO;
+import se325.assignment01.concert.service.domain.Seat;
+import se325.assignment01.concert.service.util.SeatStateStore;
+import se325.assignment01.concert.service.util.ServiceConfig;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Singleton class that keeps track of the booked seats for each concert date. Bit i of a date's bitmap is set when the
+ * seat at {@link TheatreLayout#labelOf(int) index i} has been booked.
+ * <p>
+ * A date's state is loaded from the database the first time that date is queried, and is then kept in step with the
+ * database by calling {@link #markBooked(LocalDateTime, Collection)} once a booking has been committed. The state is
+ * held in a {@link SeatStateStore} with room for "concert.seats.maxDates" (1024) dates (see {@link ServiceConfig}), so
+ * availability counts are answered without touching the database or allocating per seat.
+ */
+public class SeatAvailabilityIndex {
+    private static SeatAvailabilityIndex _instance = null;
+
+    private final SeatStateStore store;
+
+    protected SeatAvailabilityIndex() {
+        store = new SeatStateStore(TheatreLayout.NUM_SEATS_IN_THEATRE,
+                ServiceConfig.getInt("concert.seats.maxDates", 1024), this::load);
+    }
+
+    public static synchronized SeatAvailabilityIndex instance() {
+        if (_instance == null) {
+            _instance = new SeatAvailabilityIndex();
+        }
+        return _instance;
+    }
+
+    /***
+     * @param date The concert date
+     * @return A copy of the date's bitmap, in which bit i is set if the seat at index i has been booked
+     */
+    public BitSet getBookedSeats(LocalDateTime date) {
+        return store.getBooked(date);
+    }
+
+    /***
+     * @param date The concert date
+     * @return The number of seats booked for the date
+     */
+    public int getNumBooked(LocalDateTime date) {
+        return store.getNumBooked(date);
+    }
+
+    /***
+     * @param date The concert date
+     * @return The number of seats still available for the date
+     */
+    public int getNumAvailable(LocalDateTime date) {
+        return TheatreLayout.NUM_SEATS_IN_THEATRE - getNumBooked(date);
+    }
+
+    /***
+     * @param date The concert date
+     * @return The booked and available seat totals for the date
+     */
+    public SeatAvailabilityDTO getAvailability(LocalDateTime date) {
+        return new SeatAvailabilityDTO(date, TheatreLayout.NUM_SEATS_IN_THEATRE, getNumBooked(date));
+    }
+
+    /***
+     * Records seats as booked. Must only be called after the booking has been committed to the database.
+     * @param date The concert date
+     * @param labels The labels of the seats that were booked
+     */
+    public void markBooked(LocalDateTime date, Collection<String> labels) {
+        int[] indexes = new int[labels.size()];
+        int i = 0;
+        for (String label : labels) {
+            indexes[i++] = TheatreLayout.indexOf(label);
+        }
+        store.markBooked(date, indexes);
+    }
+
+    /***
+     * Forgets the seat state for a date, so it is loaded again from the database on next use. Should be called when the
+     * state is found to be out of step with the database, e.g. because another service node booked some of the seats.
+     * @param date The concert date
+     */
+    public void invalidate(LocalDateTime date) {
+        store.invalidate(date);
+    }
+
+    /**
+     * Forgets all cached seat state. Should be called whenever the seat data in the database is re-initialised.
+     */
+    public void clear() {
+        store.clear();
+    }
+
+    /***
+     * @return The number of dates held and the memory used for them
+     */
+    public Map<String, Long> getStats() {
+        return store.getStats();
+    }
+
+    private BitSet load(LocalDateTime date) {
+        EntityManager em = PersistenceManager.instance().createReadOnlyEntityManager();
+        try {
+            List<Long> ids = em.createNamedQuery(Seat.FIND_BOOKED_IDS, Long.class)
+                    .setParameter("first", Seat.firstIdOf(date))
+                    .setParameter("last", Seat.lastIdOf(date))
+                    .getResultList();
+            BitSet booked = new BitSet(TheatreLayout.NUM_SEATS_IN_THEATRE);
+            for (long id : ids) {
+                booked.set(Seat.indexOf(id));
+            }
+            return booked;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.service.util.ExpiringCache;
+import se325.assignment01.concert.service.util.ServiceConfig;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that issues authentication tokens and maps them to the ids of the users they were issued to. Tokens
+ * are random and are only held here, so logging in never writes to the database, and authenticated requests can
+ * identify their user without querying it.
+ * <p>
+ * Sessions expire "concert.session.ttlSeconds" after login, and once "concert.session.maxEntries" sessions are held the
+ * oldest are evicted (see {@link ServiceConfig}). A token that has expired or been evicted no longer identifies a
+ * user, and the user must log in again.
+ * <p>
+ * Sessions are held in memory by the service node that issued them, and are not shared with other nodes. When the
+ * service runs on more than one node, the load balancer must use sticky sessions, routing every request that carries
+ * an "auth" cookie to the node that issued it. A request routed to any other node is treated as not logged in, and a
+ * restarted node forgets all of its sessions.
+ */
+public class SessionStore {
+    private static SessionStore _instance = null;
+
+    private static final int TOKEN_BYTES = 24;
+
+    private final SecureRandom random = new SecureRandom();
+    private final ExpiringCache<String, Long> sessions;
+
+    protected SessionStore() {
+        int maxEntries = ServiceConfig.getInt("concert.session.maxEntries", 100000);
+        long ttlSeconds = ServiceConfig.getLong("concert.session.ttlSeconds", 3600);
+        sessions = new ExpiringCache<>(maxEntries, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized SessionStore instance() {
+        if (_instance == null) {
+            _instance = new SessionStore();
+        }
+        return _instance;
+    }
+
+    /***
+     * Starts a session.
+     * @param userId The id of the user who has logged in
+     * @return A new token identifying the user
+     */
+    public String createSession(long userId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, userId);
+        return token;
+    }
+
+    /***
+     * Finds the user a token was issued to.
+     * @param token The token sent by the client
+     * @return The user's id, or null if the token doesn't identify a user
+     */
+    public Long getUserId(String token) {
+        if (token == null)
+            return null;
+        return sessions.get(token);
+    }
+
+    /**
+     * Forgets all sessions. Should be called whenever the users in the database are re-initialised.
+     */
+    public void clear() {
+        sessions.invalidateAll();
+    }
+
+    /***
+     * @return The hit, miss and eviction counts for the session store
+     */
+    public Map<String, Long> getStats() {
+        return sessions.getStats();
+    }
+}
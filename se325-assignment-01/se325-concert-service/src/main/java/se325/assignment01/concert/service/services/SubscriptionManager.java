@@ -0,0 +1,196 @@
+package se325.assignment01.concert.service.services;
+
+import se325.assignment01.concert.common.dto.ConcertInfoNotificationDTO;
+import se325.assignment01.concert.service.util.ServiceConfig;
+import se325.assignment01.concert.service.util.TheatreLayout;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that holds the outstanding concert info subscriptions and notifies them as bookings are committed.
+ * <p>
+ * Subscribers are grouped by concert date, and within a date are ordered by the percentage of seats that must be
+ * booked before they are notified. When a booking for a date is committed, only the subscribers at the front of that
+ * ordering whose threshold has now been reached are removed and resumed; no threads wait on behalf of subscribers.
+ * <p>
+ * A subscription that hasn't been notified within "concert.subscription.timeoutSeconds" (see {@link ServiceConfig}) is
+ * timed out, and a subscription is forgotten as soon as its response completes for any reason, so clients that give up
+ * don't leave subscribers behind.
+ */
+public class SubscriptionManager {
+    private static final int NOTIFIER_THREADS = 2;
+
+    private static SubscriptionManager _instance = null;
+
+    private final ConcurrentMap<LocalDateTime, DateSubscribers> subscribers = new ConcurrentHashMap<>();
+    private final long timeoutSeconds = ServiceConfig.getLong("concert.subscription.timeoutSeconds", 300);
+    private final ExecutorService notifier = Executors.newFixedThreadPool(NOTIFIER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "subscription-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    protected SubscriptionManager() {
+    }
+
+    public static synchronized SubscriptionManager instance() {
+        if (_instance == null) {
+            _instance = new SubscriptionManager();
+        }
+        return _instance;
+    }
+
+    /***
+     * Registers a subscriber. If the threshold has already been reached the subscriber is notified straight away.
+     * @param date The concert date to watch
+     * @param percentageBooked The percentage of seats that must be booked before the subscriber is notified
+     * @param response The suspended response to resume with a ConcertInfoNotificationDTO
+     */
+    public void subscribe(LocalDateTime date, int percentageBooked, AsyncResponse response) {
+        while (true) {
+            DateSubscribers dateSubscribers = subscribers.computeIfAbsent(date, d -> new DateSubscribers());
+            synchronized (dateSubscribers) {
+                // clear() may have dropped the entry since it was looked up, in which case anything added to it
+                // would never be notified.
+                if (subscribers.get(date) != dateSubscribers)
+                    continue;
+
+                // Checked under the same lock as bookingCommitted(), so a booking can't slip in between the check and
+                // the registration.
+                int numBooked = SeatAvailabilityIndex.instance().getNumBooked(date);
+                if (isReached(percentageBooked, numBooked)) {
+                    notify(response, TheatreLayout.NUM_SEATS_IN_THEATRE - numBooked);
+                    return;
+                }
+                response.setTimeout(timeoutSeconds, TimeUnit.SECONDS);
+                response.register((CompletionCallback) throwable -> {
+                    synchronized (dateSubscribers) {
+                        dateSubscribers.remove(percentageBooked, response);
+                    }
+                });
+                dateSubscribers.add(percentageBooked, response);
+                return;
+            }
+        }
+    }
+
+    /***
+     * Notifies the subscribers whose thresholds have been reached for a date. Must be called after a booking for the
+     * date has been committed and recorded in the SeatAvailabilityIndex.
+     * @param date The concert date that was booked
+     */
+    public void bookingCommitted(LocalDateTime date) {
+        DateSubscribers dateSubscribers = subscribers.get(date);
+        if (dateSubscribers == null)
+            return;
+        synchronized (dateSubscribers) {
+            int numBooked = SeatAvailabilityIndex.instance().getNumBooked(date);
+            int numAvailable = TheatreLayout.NUM_SEATS_IN_THEATRE - numBooked;
+            for (AsyncResponse response : dateSubscribers.removeReached(numBooked)) {
+                notify(response, numAvailable);
+            }
+        }
+    }
+
+    /**
+     * Cancels and forgets all outstanding subscriptions. Should be called whenever the seat data in the database is
+     * re-initialised.
+     */
+    public void clear() {
+        for (Map.Entry<LocalDateTime, DateSubscribers> entry : subscribers.entrySet()) {
+            DateSubscribers dateSubscribers = entry.getValue();
+            synchronized (dateSubscribers) {
+                subscribers.remove(entry.getKey(), dateSubscribers);
+                for (AsyncResponse response : dateSubscribers.removeAll()) {
+                    response.cancel();
+                }
+            }
+        }
+    }
+
+    /***
+     * @return The number of dates with outstanding subscriptions, and the number of subscriptions outstanding
+     */
+    public Map<String, Long> getStats() {
+        long dates = 0;
+        long numSubscribers = 0;
+        for (DateSubscribers dateSubscribers : subscribers.values()) {
+            int size;
+            synchronized (dateSubscribers) {
+                size = dateSubscribers.size();
+            }
+            if (size > 0) {
+                dates++;
+                numSubscribers += size;
+            }
+        }
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("dates", dates);
+        stats.put("subscribers", numSubscribers);
+        return stats;
+    }
+
+    private void notify(AsyncResponse response, int numAvailable) {
+        // Resuming writes the response, which shouldn't hold up the booking that triggered it.
+        notifier.submit(() -> response.resume(new ConcertInfoNotificationDTO(numAvailable)));
+    }
+
+    private static boolean isReached(int percentageBooked, int numBooked) {
+        return numBooked * 100 >= percentageBooked * TheatreLayout.NUM_SEATS_IN_THEATRE;
+    }
+
+    /**
+     * The subscribers for a single date, keyed by threshold. Not thread-safe; callers synchronise on the instance.
+     */
+    private static class DateSubscribers {
+        private final TreeMap<Integer, List<AsyncResponse>> byThreshold = new TreeMap<>();
+
+        void add(int percentageBooked, AsyncResponse response) {
+            byThreshold.computeIfAbsent(percentageBooked, p -> new ArrayList<>()).add(response);
+        }
+
+        void remove(int percentageBooked, AsyncResponse response) {
+            List<AsyncResponse> responses = byThreshold.get(percentageBooked);
+            if (responses != null && responses.remove(response) && responses.isEmpty()) {
+                byThreshold.remove(percentageBooked);
+            }
+        }
+
+        List<AsyncResponse> removeReached(int numBooked) {
+            List<AsyncResponse> reached = new ArrayList<>();
+            while (!byThreshold.isEmpty() && isReached(byThreshold.firstKey(), numBooked)) {
+                reached.addAll(byThreshold.pollFirstEntry().getValue());
+            }
+            return reached;
+        }
+
+        int size() {
+            int size = 0;
+            for (List<AsyncResponse> responses : byThreshold.values()) {
+                size += responses.size();
+            }
+            return size;
+        }
+
+        List<AsyncResponse> removeAll() {
+            List<AsyncResponse> all = new ArrayList<>();
+            for (Map.Entry<Integer, List<AsyncResponse>> entry : byThreshold.entrySet()) {
+                all.addAll(entry.getValue());
+            }
+            byThreshold.clear();
+            return all;
+        }
+    }
+}
@@ -20,6 +20,9 @@ public class TestResource {
     public Response resetDatabase() {
 
         PersistenceManager.instance().reset();
+        CatalogCache.instance().invalidateAll();
+        SessionStore.instance().clear();
+        BookingPipeline.instance().getIdGenerator().reset();
         ConcertUtils.initConcerts();
 
         return Response.noContent().build();
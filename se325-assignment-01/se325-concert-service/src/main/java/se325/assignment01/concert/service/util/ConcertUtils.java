@@ -1,67 +1,181 @@
 package se325.assignment01.concert.service.util;
 
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se325.assignment01.concert.service.domain.Concert;
 import se325.assignment01.concert.service.domain.Seat;
 import se325.assignment01.concert.service.services.ConcertApplication;
 import se325.assignment01.concert.service.services.PersistenceManager;
+import se325.assignment01.concert.service.services.SeatAvailabilityIndex;
+import se325.assignment01.concert.service.services.SubscriptionManager;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class ConcertUtils {
 
     private static Logger LOGGER = LoggerFactory.getLogger(ConcertUtils.class);
 
+    // The number of seats inserted in each JDBC batch. Matches hibernate.jdbc.batch_size in persistence.xml.
+    private static final int BATCH_SIZE = 50;
+
     /**
-     * This method will clear all seat and booking data from the database. Then, it will create all Seat objects for
-     * all concerts and dates.
+     * This method will clear all seat and booking data from the database. Then, it will create the seat rows for all
+     * concerts and dates.
+     * <p>
+     * The dates are split between "concert.init.threads" worker threads (see {@link ServiceConfig}), each with its own
+     * EntityManager, and each worker's seats are inserted in JDBC batches. Each date's seats are committed in a
+     * transaction of their own, as the database locks the whole SEATS table for each insert transaction: the workers
+     * take turns with the lock a date at a time, rather than waiting for each other's whole share and timing out.
+     * <p>
+     * If "concert.seats.lazy" is set, no seats are created here. A seat with no row is treated as unbooked, priced
+     * according to {@link TheatreLayout#PRICE_BANDS}, and its row is only created when it is first booked.
+     *
+     * @throws IllegalArgumentException if a concert date isn't a whole minute (see {@link Seat#idOf})
      */
     public static void initConcerts() {
         LOGGER.debug("initConcerts(): Creating the Application");
+        long start = System.nanoTime();
+
+        // Any cached seat state and subscriptions will refer to seats that no longer exist.
+        SeatAvailabilityIndex.instance().clear();
+        SubscriptionManager.instance().clear();
 
+        List<LocalDateTime> allDates;
         EntityManager em = PersistenceManager.instance().createEntityManager();
         try {
 
             // Get all concerts
             em.getTransaction().begin();
-            TypedQuery<Concert> query = em.createQuery("select c from Concert c", Concert.class);
+            TypedQuery<Concert> query = em.createNamedQuery(Concert.FIND_ALL, Concert.class);
             List<Concert> concerts = query.getResultList();
 
             // Get all dates for all concerts
-            Set<LocalDateTime> allDates = new HashSet<>();
+            Set<LocalDateTime> dates = new HashSet<>();
             for (Concert c : concerts) {
-                Set<LocalDateTime> dates = c.getDates();
-                allDates.addAll(dates);
+                dates.addAll(c.getDates());
             }
             em.getTransaction().commit();
+            allDates = new ArrayList<>(dates);
+        } finally {
+            em.close();
+        }
 
-            LOGGER.debug("initConcerts(): There are " + allDates.size() + " concert dates");
+        LOGGER.debug("initConcerts(): There are " + allDates.size() + " concert dates");
 
-            // For each concert date, create the seats for that date and persist them.
-            int seatCount = 0;
-            for (LocalDateTime date : allDates) {
+        // Seat ids are only unique for dates that are whole minutes, so refuse any others before seats are created.
+        for (LocalDateTime date : allDates) {
+            Seat.firstIdOf(date);
+        }
 
-                em.getTransaction().begin();
-                Set<Seat> seatsForDate = TheatreLayout.createSeatsFor(date);
-                for (Seat s : seatsForDate) {
-                    em.persist(s);
-                    seatCount++;
-                }
-                em.getTransaction().commit();
+        if (isLazySeating()) {
+            LOGGER.info("initConcerts(): Lazy seating enabled; seats will be created as they are booked");
+            return;
+        }
 
-                // Ensures we aren't braking the EM with thousands of seat entities.
-                em.clear();
+        // Deal the dates out between the workers, and have each create the seats for its share.
+        int numThreads = Math.max(1, Math.min(allDates.size(),
+                ServiceConfig.getInt("concert.init.threads", Runtime.getRuntime().availableProcessors())));
+        List<List<LocalDateTime>> shares = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < allDates.size(); i++) {
+            shares.get(i % numThreads).add(allDates.get(i));
+        }
+
+        int seatCount = 0;
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (List<LocalDateTime> share : shares) {
+                results.add(workers.submit(() -> createSeatsFor(share)));
+            }
+            for (Future<Integer> result : results) {
+                seatCount += result.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating seats", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to create seats", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+
+        LOGGER.info("initConcerts(): Created " + seatCount + " seats for " + allDates.size() + " dates in "
+                + (System.nanoTime() - start) / 1000000 + " ms using " + numThreads + " threads");
+    }
 
-            LOGGER.debug("initConcerts(): Created " + seatCount + " seats!");
+    /**
+     * Returns true if seats should only be created when they are first booked, rather than up front for every date.
+     */
+    private static boolean isLazySeating() {
+        return ServiceConfig.getBoolean("concert.seats.lazy", false);
+    }
+
+    /**
+     * Inserts the unbooked seats for a date in JDBC batches, by id and without creating a Seat entity for each. The
+     * caller manages the transaction.
+     *
+     * @param connection the connection to insert the seats with
+     * @param date       the concert date
+     * @throws SQLException if the seats can't be inserted
+     */
+    public static void insertSeatsFor(Connection connection, LocalDateTime date) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(Seat.INSERT_UNBOOKED_SQL)) {
+            for (int index = 0; index < TheatreLayout.NUM_SEATS_IN_THEATRE; index++) {
+                insert.setLong(1, Seat.idOf(date, index));
+                insert.addBatch();
+                if ((index + 1) % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * Inserts the seats for the given dates, in one transaction per date. Seats are inserted by id in JDBC batches,
+     * without creating a Seat entity for each.
+     *
+     * @return the number of seats created
+     */
+    private static int createSeatsFor(List<LocalDateTime> dates) {
+        int seatCount = 0;
+        EntityManager em = PersistenceManager.instance().createEntityManager();
+        try {
+            Session session = em.unwrap(Session.class);
+            for (LocalDateTime date : dates) {
+                em.getTransaction().begin();
+                session.doWork(connection -> insertSeatsFor(connection, date));
+                em.getTransaction().commit();
+                seatCount += TheatreLayout.NUM_SEATS_IN_THEATRE;
+            }
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
         } finally {
             em.close();
         }
+        return seatCount;
     }
 }
@@ -0,0 +1,157 @@
+package se325.assignment01.concert.service.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache with a bounded number of entries, each of which expires a fixed time after it was added. When
+ * the cache is full, expired entries are dropped first, followed by the entries closest to expiring. Lookups don't
+ * lock, so the cache suits data that is read far more often than it is written.
+ * <p>
+ * Only one thread evicts at a time. Additions made while it does so go ahead without waiting, so the cache may briefly
+ * hold a few more than its maximum number of entries.
+ *
+ * @param <K> the key type
+ * @param <V> the value type. Null values are never cached.
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringCache(int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the cached value for a key, or null if there is no unexpired value.
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && !entry.isExpired(System.nanoTime())) {
+            hits.increment();
+            return entry.value;
+        }
+        if (entry != null) {
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the cached value for a key, using the loader to obtain and cache the value if there is no unexpired
+     * value. The loader may be called concurrently for the same key; the last value loaded wins. A value whose load
+     * overlapped an invalidation is returned but not cached, as it may predate the invalidation.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            long generationAtLoad = generation.get();
+            value = loader.apply(key);
+            if (generation.get() == generationAtLoad) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (value == null) {
+            return;
+        }
+        if (entries.size() >= maxEntries && !entries.containsKey(key) && evicting.compareAndSet(false, true)) {
+            try {
+                evict();
+            } finally {
+                evicting.set(false);
+            }
+        }
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    public void invalidate(K key) {
+        generation.incrementAndGet();
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts since the cache was created, along with its current size.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("size", (long) entries.size());
+        return stats;
+    }
+
+    private void evict() {
+        long now = System.nanoTime();
+        List<Map.Entry<K, Entry<V>>> live = new ArrayList<>();
+        for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+            if (!e.getValue().isExpired(now)) {
+                live.add(e);
+            } else if (entries.remove(e.getKey(), e.getValue())) {
+                evictions.increment();
+            }
+        }
+        if (entries.size() < maxEntries) {
+            return;
+        }
+
+        // Still full, so drop the entries closest to expiring. Freeing a tenth of the cache at once means a full cache
+        // is only scanned once every maxEntries / 10 additions.
+        live.sort((x, y) -> Long.signum(x.getValue().expiresAt - y.getValue().expiresAt));
+        int toEvict = entries.size() - (maxEntries - Math.max(1, maxEntries / 10));
+        for (int i = 0; i < toEvict && i < live.size(); i++) {
+            if (entries.remove(live.get(i).getKey(), live.get(i).getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
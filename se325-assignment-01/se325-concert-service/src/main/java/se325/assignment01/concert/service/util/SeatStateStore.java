@@ -0,0 +1,262 @@
+package se325.assignment01.concert.service.util;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A store of which seats are booked for each concert date. The booked flags of all dates are packed into a single
+ * array of 64-bit words, one bit per seat, in which each date is given a slot of consecutive words. No object is kept
+ * per seat or per date's flags, so the store's garbage collection cost doesn't grow with the number of seats and dates
+ * held.
+ * <p>
+ * A date's flags are loaded on first use, and are changed in place afterwards. Changes to a date are serialised with
+ * each other and with its load. Reads of a date that has been loaded don't lock, and see each word as it was last
+ * written. A reader may see some of the seats in a concurrent change but not others, so a change that must be seen in
+ * full has to be completed before the read begins.
+ * <p>
+ * The array has room for a fixed number of dates. Free slots are kept on a free list, and once there are none a date
+ * that hasn't been read recently is evicted to make room, chosen by a clock sweep over the slots. Only that date has
+ * to be loaded again when it is next used.
+ */
+public class SeatStateStore {
+
+    private final int numSeats;
+    private final int numWords;
+    private final int maxDates;
+    private final Function<LocalDateTime, BitSet> loader;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder uncachedLoads = new LongAdder();
+    private volatile Slab slab;
+
+    /**
+     * @param numSeats the number of seats for each date
+     * @param maxDates the number of dates the store has room for
+     * @param loader   loads the booked seats for a date, in which bit i is set if the seat at index i is booked
+     */
+    public SeatStateStore(int numSeats, int maxDates, Function<LocalDateTime, BitSet> loader) {
+        this.numSeats = numSeats;
+        this.numWords = (numSeats + 63) / 64;
+        this.maxDates = Math.max(1, maxDates);
+        this.loader = loader;
+        this.slab = new Slab();
+    }
+
+    /**
+     * Returns a copy of the booked flags for a date, in which bit i is set if the seat at index i is booked.
+     */
+    public BitSet getBooked(LocalDateTime date) {
+        return BitSet.valueOf(slab.wordsOf(date));
+    }
+
+    /**
+     * Returns the number of seats booked for a date.
+     */
+    public int getNumBooked(LocalDateTime date) {
+        int numBooked = 0;
+        for (long word : slab.wordsOf(date)) {
+            numBooked += Long.bitCount(word);
+        }
+        return numBooked;
+    }
+
+    /**
+     * Sets the booked flags for seats. Dates that haven't been loaded are left alone, as their flags will include the
+     * change when they are.
+     *
+     * @param date    the concert date
+     * @param indexes the indexes of the seats that have been booked
+     * @throws IndexOutOfBoundsException if any index isn't that of a seat, in which case no flags are changed
+     */
+    public void markBooked(LocalDateTime date, int[] indexes) {
+        for (int index : indexes) {
+            if (index < 0 || index >= numSeats) {
+                throw new IndexOutOfBoundsException("No seat at index " + index);
+            }
+        }
+        Slab slab = this.slab;
+        slab.slots.computeIfPresent(date, (d, slot) -> {
+            int first = slot * numWords;
+            for (int index : indexes) {
+                int i = first + (index >>> 6);
+                slab.words.set(i, slab.words.get(i) | (1L << index));
+            }
+            return slot;
+        });
+    }
+
+    /**
+     * Forgets the flags for a date, so they are loaded again on next use. Its slot goes back on the free list.
+     *
+     * @param date the concert date
+     */
+    public void invalidate(LocalDateTime date) {
+        slab.remove(date);
+    }
+
+    /**
+     * Forgets the flags for all dates, so they are loaded again on next use.
+     */
+    public void clear() {
+        slab = new Slab();
+    }
+
+    /**
+     * Returns the number of dates held, the number there is room for and the bytes used for their flags, along with
+     * the number of dates evicted to make room and the number of reads that found no room at all.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("dates", (long) slab.slots.size());
+        stats.put("maxDates", (long) maxDates);
+        stats.put("bytes", (long) maxDates * numWords * Long.BYTES);
+        stats.put("evictions", evictions.sum());
+        stats.put("uncachedLoads", uncachedLoads.sum());
+        return stats;
+    }
+
+    /**
+     * The slots of the store since it was last cleared. Each slot records the date it holds, or null while it is free
+     * or being loaded, and whether it has been read since the clock last passed it.
+     * <p>
+     * A slot is given to a date, or taken from one, only while holding the lock on that date's mapping, so a change to
+     * the date's flags never lands in a slot the date no longer holds. Readers don't lock, and instead check that the
+     * slot still belonged to the date after reading it.
+     */
+    private class Slab {
+        final AtomicLongArray words = new AtomicLongArray(maxDates * numWords);
+        final AtomicReferenceArray<LocalDateTime> owners = new AtomicReferenceArray<>(maxDates);
+        final AtomicIntegerArray referenced = new AtomicIntegerArray(maxDates);
+        final ConcurrentMap<LocalDateTime, Integer> slots = new ConcurrentHashMap<>();
+
+        // Guarded by this.
+        private final int[] free = new int[maxDates];
+        private int numFree;
+        private int hand;
+
+        Slab() {
+            for (int slot = 0; slot < maxDates; slot++) {
+                free[slot] = maxDates - 1 - slot;
+            }
+            numFree = maxDates;
+        }
+
+        /**
+         * Returns a copy of a date's words, loading the date if it isn't held. Only a date that isn't held locks,
+         * while it is loaded.
+         */
+        long[] wordsOf(LocalDateTime date) {
+            while (true) {
+                Integer slot = slots.get(date);
+                if (slot == null) {
+                    slot = load(date);
+                    if (slot == null) {
+                        return loadUncached(date);
+                    }
+                }
+                long[] copy = new long[numWords];
+                for (int i = 0; i < numWords; i++) {
+                    copy[i] = words.get(slot * numWords + i);
+                }
+                // If the slot changed hands during the read, the copy may be of another date, so read again.
+                if (date.equals(owners.get(slot))) {
+                    referenced.lazySet(slot, 1);
+                    return copy;
+                }
+            }
+        }
+
+        /**
+         * Loads a date into a free slot, unless another thread loads it first.
+         *
+         * @return the date's slot, or null if there is no room for it
+         */
+        private Integer load(LocalDateTime date) {
+            int free = takeSlot();
+            if (free < 0) {
+                return null;
+            }
+            Integer slot = slots.computeIfAbsent(date, d -> {
+                long[] loaded = loader.apply(d).toLongArray();
+                if (loaded.length > numWords) {
+                    throw new IndexOutOfBoundsException("Booked seats for " + d + " exceed " + numSeats + " seats");
+                }
+                for (int i = 0; i < numWords; i++) {
+                    words.set(free * numWords + i, i < loaded.length ? loaded[i] : 0);
+                }
+                owners.set(free, d);
+                return free;
+            });
+            if (slot != free) {
+                releaseSlot(free);
+            }
+            return slot;
+        }
+
+        private long[] loadUncached(LocalDateTime date) {
+            uncachedLoads.increment();
+            return Arrays.copyOf(loader.apply(date).toLongArray(), numWords);
+        }
+
+        /**
+         * Forgets a date and frees its slot.
+         */
+        void remove(LocalDateTime date) {
+            int[] removed = {-1};
+            slots.computeIfPresent(date, (d, slot) -> {
+                owners.set(slot, null);
+                removed[0] = slot;
+                return null;
+            });
+            if (removed[0] >= 0) {
+                releaseSlot(removed[0]);
+            }
+        }
+
+        /**
+         * Takes a slot from the free list, or evicts a date that hasn't been read since the clock last passed it.
+         *
+         * @return the slot, or -1 if every slot is being loaded or keeps being read
+         */
+        private synchronized int takeSlot() {
+            if (numFree > 0) {
+                return free[--numFree];
+            }
+            for (int step = 0; step < 2 * maxDates; step++) {
+                int slot = hand;
+                hand = (hand + 1) % maxDates;
+                LocalDateTime owner = owners.get(slot);
+                if (owner == null || referenced.getAndSet(slot, 0) == 1) {
+                    continue;
+                }
+                boolean[] evicted = {false};
+                slots.computeIfPresent(owner, (d, held) -> {
+                    if (held != slot) {
+                        return held;
+                    }
+                    owners.set(slot, null);
+                    evicted[0] = true;
+                    return null;
+                });
+                if (evicted[0]) {
+                    evictions.increment();
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private synchronized void releaseSlot(int slot) {
+            free[numFree++] = slot;
+        }
+    }
+}
@@ -1,11 +1,7 @@
 package se325.assignment01.concert.service.util;
 
-import se325.assignment01.concert.service.domain.Seat;
-
 import java.math.BigDecimal;
-import java.time.LocalDateTime;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Utility class that models the layout of seats at the concert venue.
@@ -22,44 +18,78 @@ public class TheatreLayout {
             new PriceBand("Silver Seating", new BigDecimal(90), 2)
     };
 
+    // The index into PRICE_BANDS of each seat's price band, by seat index.
+    private static final byte[] PRICE_BAND_IDS = priceBandIds();
+
     /**
-     * A utility function that creates all required {@link Seat} objects for a concert on the given date.
+     * Returns the position of the seat with the given label within the theatre, counting row by row from seat A1. The
+     * index is in the range 0 (inclusive) to {@link #NUM_SEATS_IN_THEATRE} (exclusive).
      *
-     * @param date the date
-     * @return a list of Seat objects
+     * @param label the seat label, e.g. "C5"
+     * @return the seat's index, or -1 if the label doesn't identify a seat in the theatre
      */
-    public static Set<Seat> createSeatsFor(LocalDateTime date) {
-
-        Set<Seat> seats = new HashSet<>();
-
-        int rowsCreatedThisPricingBand = 0;
-        int currentPricingIndex = 0;
-        PriceBand currentPricing = PRICE_BANDS[currentPricingIndex];
+    public static int indexOf(String label) {
+        if (label == null || label.length() < 2) {
+            return -1;
+        }
 
-        for (int rowNum = 0; rowNum < NUM_ROWS; rowNum++) {
+        int rowNum = label.charAt(0) - 'A';
+        int seatNum;
+        try {
+            seatNum = Integer.parseInt(label.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
 
-            char rowLabel = (char) ('A' + rowNum); // String.fromCharCode("A".charCodeAt(0) + rowNum);
+        if (rowNum < 0 || rowNum >= NUM_ROWS || seatNum < 1 || seatNum > NUM_SEATS_PER_ROW) {
+            return -1;
+        }
+        return rowNum * NUM_SEATS_PER_ROW + (seatNum - 1);
+    }
 
-            for (int seatNum = 1; seatNum <= NUM_SEATS_PER_ROW; seatNum++) {
+    /**
+     * Returns the label of the seat at the given index. This is the inverse of {@link #indexOf(String)}.
+     *
+     * @param index the seat index
+     * @return the seat label
+     */
+    public static String labelOf(int index) {
+        char rowLabel = (char) ('A' + index / NUM_SEATS_PER_ROW);
+        return "" + rowLabel + (index % NUM_SEATS_PER_ROW + 1);
+    }
 
-                String seatLabel = "" + rowLabel + seatNum;
+    /**
+     * Returns the price of the seat at the given index, according to the {@link #PRICE_BANDS}.
+     *
+     * @param index the seat index
+     * @return the seat price
+     */
+    public static BigDecimal priceOf(int index) {
+        return PRICE_BANDS[priceBandOf(index)].price;
+    }
 
-                seats.add(new Seat(
-                        seatLabel, false, date, currentPricing.price
-                ));
-            }
+    /**
+     * Returns the price band of the seat at the given index, as an index into {@link #PRICE_BANDS}.
+     *
+     * @param index the seat index
+     * @return the price band id
+     */
+    public static int priceBandOf(int index) {
+        return PRICE_BAND_IDS[index];
+    }
 
-            rowsCreatedThisPricingBand++;
-            if (rowsCreatedThisPricingBand == currentPricing.numRows) {
-                currentPricingIndex++;
-                currentPricing = currentPricingIndex < PRICE_BANDS.length ? PRICE_BANDS[currentPricingIndex] : null;
-                rowsCreatedThisPricingBand = 0;
+    private static byte[] priceBandIds() {
+        byte[] ids = new byte[NUM_SEATS_IN_THEATRE];
+        int rowNum = 0;
+        for (byte band = 0; band < PRICE_BANDS.length; band++) {
+            for (int i = 0; i < PRICE_BANDS[band].numRows && rowNum < NUM_ROWS; i++, rowNum++) {
+                Arrays.fill(ids, rowNum * NUM_SEATS_PER_ROW, (rowNum + 1) * NUM_SEATS_PER_ROW, band);
             }
-
         }
-
-        return seats;
-
+        if (rowNum < NUM_ROWS) {
+            throw new IllegalStateException("The price bands don't cover every row");
+        }
+        return ids;
     }
 
     public static class PriceBand {
@@ -9,14 +9,21 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -27,6 +34,7 @@ import static org.junit.Assert.*;
 public class ConcertResourceIT {
 
     private static final String WEB_SERVICE_URI = "http://localhost:10000/services/concert-service";
+    private static final String CONCERT_REGION = "se325.assignment01.concert.service.domain.Concert";
     private Client client;
 
     /**
@@ -102,6 +110,151 @@ public class ConcertResourceIT {
         assertEquals(LocalDateTime.of(2019, 9, 7, 20, 0, 0), concert.getDates().get(1));
     }
 
+    /**
+     * Tests that a concert is returned with an ETag, and that a 304 response without a body is returned when the
+     * client's copy is still current.
+     */
+    @Test
+    public void testConditionalGetOfUnchangedConcert() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        EntityTag tag = response.getEntityTag();
+        response.close();
+
+        assertNotNull(tag);
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString()).get();
+
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        assertFalse(response.hasEntity());
+        response.close();
+
+    }
+
+    /**
+     * Tests that a nonexistent concert or performer is a 404 error even when the client sends the catalog's current
+     * ETag, which every catalog resource shares.
+     */
+    @Test
+    public void testConditionalGetOfNonexistentConcertAndPerformer() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request().get();
+        EntityTag tag = response.getEntityTag();
+        response.close();
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/100").request()
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString()).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = client.target(WEB_SERVICE_URI + "/performers/100").request()
+                .header(HttpHeaders.IF_NONE_MATCH, tag.toString()).get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        response.close();
+
+    }
+
+    /**
+     * Tests that a compressed response has a different ETag from an uncompressed one, and that each tag only matches
+     * the representation it was sent with.
+     */
+    @Test
+    public void testConditionalGetOfCompressedConcert() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request().get();
+        EntityTag identityTag = response.getEntityTag();
+        response.close();
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip").get();
+        assertEquals("gzip", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        EntityTag gzipTag = response.getEntityTag();
+        response.close();
+
+        assertNotEquals(identityTag, gzipTag);
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, gzipTag.toString()).get();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.IF_NONE_MATCH, gzipTag.toString()).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(identityTag, response.getEntityTag());
+        response.close();
+
+    }
+
+    /**
+     * Tests that a content coding refused by the client isn't used, even when the client accepts any coding.
+     */
+    @Test
+    public void testRefusedContentCoding() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *").get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("deflate", response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+        response.close();
+
+    }
+
+    /**
+     * Tests that a concert's ETag changes when the catalog is reset, so a client's old copy is replaced.
+     */
+    @Test
+    public void testConditionalGetAfterReset() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request().get();
+        EntityTag oldTag = response.getEntityTag();
+        response.close();
+
+        client.target(WEB_SERVICE_URI + "-test/reset").request().get().close();
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.IF_NONE_MATCH, oldTag.toString()).get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNotEquals(oldTag, response.getEntityTag());
+        assertEquals("PTX: The World Tour", response.readEntity(ConcertDTO.class).getTitle());
+        response.close();
+
+    }
+
+    /**
+     * Tests that invalidating a concert changes its ETag, and evicts it from Hibernate's second-level cache as well as
+     * the catalog cache, so the next request reads it from the database. Other concerts stay cached.
+     */
+    @Test
+    public void testConditionalGetAfterConcertInvalidated() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts/1").request().get();
+        EntityTag oldTag = response.getEntityTag();
+        response.close();
+        long cached = countCachedEntities(CONCERT_REGION);
+        assertTrue(cached > 0);
+
+        response = client.target(WEB_SERVICE_URI + "-admin/catalog-cache/concerts/1").request().delete();
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+        response.close();
+        assertEquals(cached - 1, countCachedEntities(CONCERT_REGION));
+
+        response = client.target(WEB_SERVICE_URI + "/concerts/1").request()
+                .header(HttpHeaders.IF_NONE_MATCH, oldTag.toString()).get();
+
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertNotEquals(oldTag, response.getEntityTag());
+        assertEquals("PTX: The World Tour", response.readEntity(ConcertDTO.class).getTitle());
+        response.close();
+        assertEquals(cached, countCachedEntities(CONCERT_REGION));
+
+    }
+
     /**
      * Tests that a 404 response is returned when requesting a nonexistent concert.
      */
@@ -229,6 +382,91 @@ public class ConcertResourceIT {
 
     }
 
+    /**
+     * Tests that concerts can be retrieved a page at a time, ordered by id, by following the Link with rel="next"
+     * until there are no more pages.
+     */
+    @Test
+    public void testGetConcertsByPage() {
+
+        List<ConcertDTO> concerts = new ArrayList<>();
+        int numPages = 0;
+        Link next = Link.fromUri(WEB_SERVICE_URI + "/concerts?limit=3").build();
+        while (next != null) {
+            Response response = client.target(next).request().get();
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            List<ConcertDTO> page = response.readEntity(new GenericType<List<ConcertDTO>>() {
+            });
+            assertTrue(page.size() <= 3);
+            concerts.addAll(page);
+            numPages++;
+            next = response.getLink("next");
+            response.close();
+        }
+
+        assertEquals(3, numPages);
+        assertEquals(8, concerts.size());
+        for (int i = 0; i < concerts.size(); i++) {
+            assertEquals(Long.valueOf(i + 1), concerts.get(i).getId());
+        }
+        assertEquals("PTX: The World Tour", concerts.get(0).getTitle());
+        assertEquals("Shawn Mendes, with special guest Ruel", concerts.get(7).getTitle());
+
+    }
+
+    /**
+     * Tests that a user's bookings can be retrieved a page at a time, and that the last page has no Link to a next one.
+     */
+    @Test
+    public void testGetBookingsByPage() {
+
+        login(client, "testuser", "pa55word");
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+        for (String seat : new String[]{"A1", "A2", "A3"}) {
+            Response response = attemptBooking(client, 1, date, seat);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            response.close();
+        }
+
+        Response response = client.target(WEB_SERVICE_URI + "/bookings?limit=2").request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        List<BookingDTO> firstPage = response.readEntity(new GenericType<List<BookingDTO>>() {
+        });
+        Link next = response.getLink("next");
+        response.close();
+
+        assertEquals(2, firstPage.size());
+        assertNotNull(next);
+
+        response = client.target(next).request().get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        List<BookingDTO> secondPage = response.readEntity(new GenericType<List<BookingDTO>>() {
+        });
+        assertNull(response.getLink("next"));
+        response.close();
+
+        assertEquals(1, secondPage.size());
+        List<String> labels = new ArrayList<>();
+        for (BookingDTO booking : firstPage) {
+            labels.add(booking.getSeats().get(0).getLabel());
+        }
+        labels.add(secondPage.get(0).getSeats().get(0).getLabel());
+        assertEquals(Arrays.asList("A1", "A2", "A3"), labels);
+
+    }
+
+    /**
+     * Tests that a 400 error is returned when requesting a page with a limit that isn't positive.
+     */
+    @Test
+    public void testGetPageWithBadLimit() {
+
+        Response response = client.target(WEB_SERVICE_URI + "/concerts?limit=0").request().get();
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+    }
+
     /**
      * Tests that a 401 error is returned when an incorrect username is supplied on login, and makes sure that
      * no authentication token is generated.
@@ -439,6 +677,37 @@ public class ConcertResourceIT {
         }
     }
 
+    /**
+     * Tests that a user's bookings are loaded with the same number of database statements however many bookings they
+     * have, whether they are retrieved all at once, a page at a time, or individually.
+     */
+    @Test
+    public void testGetBookingsUsesFixedNumberOfStatements() {
+
+        login(client, "testuser", "pa55word");
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+        Response response = attemptBooking(client, 1, date, "A1", "A2");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+        String location = response.getLocation().toString();
+        response.close();
+
+        long[] fewBookings = countBookingStatements(location);
+
+        for (int num = 3; num <= 12; num += 2) {
+            response = attemptBooking(client, 1, date, "B" + num, "B" + (num + 1), "C" + num);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            response.close();
+        }
+
+        long[] manyBookings = countBookingStatements(location);
+
+        assertArrayEquals(fewBookings, manyBookings);
+        assertEquals(1, manyBookings[0]);
+        assertEquals(2, manyBookings[1]);
+        assertEquals(1, manyBookings[2]);
+    }
+
     /**
      * Tests that a 401 error is returned when trying to access any booking information while not authenticated.
      */
@@ -582,6 +851,85 @@ public class ConcertResourceIT {
 
     }
 
+    /**
+     * Tests that a 400 error is returned when attempting to book no seats, or the same seat twice, and that no seats
+     * are booked.
+     */
+    @Test
+    public void testAttemptBookingEmptyOrRepeatedSeats() {
+
+        login(client, "testuser", "pa55word");
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+
+        Response response = attemptBooking(client, 1, date);
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response.close();
+
+        response = attemptBooking(client, 1, date, "A1", "A1");
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        response.close();
+
+        SeatAvailabilityDTO availability = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00/availability")
+                .request().get(SeatAvailabilityDTO.class);
+        assertEquals(0, availability.getNumSeatsBooked());
+
+    }
+
+    /**
+     * Tests that when several users try to book overlapping seats at the same time, exactly one booking succeeds and
+     * the rest are refused with 403 errors.
+     */
+    @Test
+    public void testAttemptConcurrentOverlappingBookings() throws InterruptedException, ExecutionException {
+
+        final int numBookings = 8;
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+        List<Client> clients = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(numBookings);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> statuses = new ArrayList<>();
+            for (int i = 0; i < numBookings; i++) {
+                Client bookingClient = ClientBuilder.newClient();
+                clients.add(bookingClient);
+                login(bookingClient, i % 2 == 0 ? "testuser" : "testuser2", "pa55word");
+
+                // Every booking asks for seat D6, along with a seat of its own.
+                String ownSeat = "E" + (i + 1);
+                statuses.add(executor.submit(() -> {
+                    start.await();
+                    Response response = attemptBooking(bookingClient, 1, date, "D6", ownSeat);
+                    int status = response.getStatus();
+                    response.close();
+                    return status;
+                }));
+            }
+            start.countDown();
+
+            int numCreated = 0;
+            for (Future<Integer> status : statuses) {
+                if (status.get() == Response.Status.CREATED.getStatusCode()) {
+                    numCreated++;
+                } else {
+                    assertEquals(Response.Status.FORBIDDEN.getStatusCode(), (int) status.get());
+                }
+            }
+            assertEquals(1, numCreated);
+        } finally {
+            executor.shutdownNow();
+            for (Client bookingClient : clients) {
+                bookingClient.close();
+            }
+        }
+
+        // Make sure only one booking's seats were booked.
+        List<SeatDTO> bookedSeats = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00?status=Booked")
+                .request().get(new GenericType<List<SeatDTO>>() {
+                });
+        assertEquals(2, bookedSeats.size());
+
+    }
+
     /**
      * Tests that the booked seats for a particular concert on a particular date can be queried.
      */
@@ -661,6 +1009,81 @@ public class ConcertResourceIT {
         }
     }
 
+    /**
+     * Tests that the database can be reset repeatedly while its seats are created by several workers (the service is
+     * run with "concert.init.threads" set to 4, see pom.xml), and that every date's seats can then be booked.
+     */
+    @Test
+    public void testResetWithSeveralSeatWorkers() {
+
+        for (int i = 0; i < 5; i++) {
+            Response response = client.target(WEB_SERVICE_URI + "-test/reset").request().get();
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+            response.close();
+        }
+
+        login(client, "testuser", "pa55word");
+        List<ConcertDTO> concerts = client.target(WEB_SERVICE_URI + "/concerts")
+                .request().get(new GenericType<List<ConcertDTO>>() {
+                });
+        for (ConcertDTO concert : concerts) {
+            for (LocalDateTime date : concert.getDates()) {
+                Response response = attemptBooking(client, concert.getId(), date, "A1");
+                assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+                response.close();
+
+                SeatAvailabilityDTO availability = client.target(WEB_SERVICE_URI + "/seats/" + date + "/availability")
+                        .request().get(SeatAvailabilityDTO.class);
+                assertEquals(119, availability.getNumSeatsAvailable());
+            }
+        }
+
+    }
+
+    /**
+     * Tests that the number of booked and available seats for a particular concert on a particular date can be
+     * queried, and reflects bookings that have been made.
+     */
+    @Test
+    public void testGetSeatAvailabilityForDate() {
+        login(client, "testuser", "pa55word");
+
+        Response response = attemptBooking(client, 1,
+                LocalDateTime.of(2020, 2, 15, 20, 0, 0),
+                "C5", "C6");
+        assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+        SeatAvailabilityDTO availability = client.target(WEB_SERVICE_URI + "/seats/2020-02-15T20:00:00/availability")
+                .request().get(SeatAvailabilityDTO.class);
+
+        assertEquals(LocalDateTime.of(2020, 2, 15, 20, 0, 0), availability.getDate());
+        assertEquals(120, availability.getNumSeats());
+        assertEquals(2, availability.getNumSeatsBooked());
+        assertEquals(118, availability.getNumSeatsAvailable());
+    }
+
+    /**
+     * Tests that a 404 error is returned when querying seat availability for a date with no concert.
+     */
+    @Test
+    public void testGetSeatAvailabilityForNonexistentDate() {
+        Response response = client.target(WEB_SERVICE_URI + "/seats/2020-02-16T20:00:00/availability")
+                .request().get();
+
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    /**
+     * Tests that a 400 error is returned when querying seat availability for something that isn't a date.
+     */
+    @Test
+    public void testGetSeatAvailabilityForBadDate() {
+        Response response = client.target(WEB_SERVICE_URI + "/seats/not-a-date/availability")
+                .request().get();
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    }
+
     // Tests for publish / subscribe functions - uncomment when ready.
     // --------------------------------------------------------------------
 
@@ -801,6 +1224,52 @@ public class ConcertResourceIT {
 
     }
 
+    /**
+     * Tests that a subscription which isn't notified within concert.subscription.timeoutSeconds (8 seconds, as set for
+     * the integration tests in the pom) ends with a 503 error, and is forgotten so later bookings don't notify it.
+     */
+    @Test
+    public void testSubscriptionTimeout() throws ExecutionException, InterruptedException, TimeoutException {
+
+        // Log in
+        login(client, "testuser", "pa55word");
+
+        // Subscribe
+        LocalDateTime date = LocalDateTime.of(2020, 2, 15, 20, 0, 0);
+        ConcertInfoSubscriptionDTO subInfo = new ConcertInfoSubscriptionDTO(1, date, 50);
+        Future<Response> future = client.target(WEB_SERVICE_URI + "/subscribe/concertInfo")
+                .request().async().post(Entity.json(subInfo));
+
+        // The subscription should still be outstanding after a second.
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail(); // Shouldn't have worked.
+        } catch (TimeoutException e) {
+            // Good!
+        }
+        assertEquals(1, countSubscribers());
+
+        // Wait for the subscription to time out, allowing a few seconds more.
+        Response response = future.get(15, TimeUnit.SECONDS);
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), response.getStatus());
+        response.close();
+
+        assertEquals(0, countSubscribers());
+
+        // Booking past the threshold now has nobody to notify.
+        Client user2Client = ClientBuilder.newClient();
+        try {
+            login(user2Client, "testuser2", "pa55word");
+            response = attemptBooking(user2Client, 1, date, 'A', 'G');
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            response.close();
+        } finally {
+            user2Client.close();
+        }
+
+        assertEquals(0, countSubscribers());
+    }
+
     // Helper methods
     // --------------------------------------------------------------------
 
@@ -813,6 +1282,65 @@ public class ConcertResourceIT {
                 .request().post(Entity.json(creds));
     }
 
+    /**
+     * Helper method - retrieves all of the logged in user's bookings, then a page of them, then the booking at the
+     * given location, and returns the number of statements the service prepared for each.
+     */
+    private long[] countBookingStatements(String bookingLocation) {
+        long[] counts = new long[3];
+
+        long before = countStatements();
+        List<BookingDTO> bookings = client.target(WEB_SERVICE_URI + "/bookings")
+                .request().get(new GenericType<List<BookingDTO>>() {
+                });
+        assertFalse(bookings.isEmpty());
+        counts[0] = countStatements() - before;
+
+        before = countStatements();
+        bookings = client.target(WEB_SERVICE_URI + "/bookings").queryParam("limit", 3)
+                .request().get(new GenericType<List<BookingDTO>>() {
+                });
+        assertFalse(bookings.isEmpty());
+        counts[1] = countStatements() - before;
+
+        before = countStatements();
+        BookingDTO booking = client.target(bookingLocation).request().get(BookingDTO.class);
+        assertEquals(2, booking.getSeats().size());
+        counts[2] = countStatements() - before;
+
+        return counts;
+    }
+
+    /**
+     * Helper method - gets the number of entities held in a region of the service's second-level cache.
+     */
+    private long countCachedEntities(String region) {
+        Map<String, Map<String, Long>> stats = client.target(WEB_SERVICE_URI + "-metrics/entity-cache")
+                .request().get(new GenericType<Map<String, Map<String, Long>>>() {
+                });
+        return stats.get(region).get("size");
+    }
+
+    /**
+     * Helper method - gets the number of subscriptions the service has outstanding.
+     */
+    private long countSubscribers() {
+        Map<String, Long> stats = client.target(WEB_SERVICE_URI + "-metrics/subscriptions")
+                .request().get(new GenericType<Map<String, Long>>() {
+                });
+        return stats.get("subscribers");
+    }
+
+    /**
+     * Helper method - gets the number of statements the service has prepared.
+     */
+    private long countStatements() {
+        Map<String, Long> stats = client.target(WEB_SERVICE_URI + "-metrics/statements")
+                .request().get(new GenericType<Map<String, Long>>() {
+                });
+        return stats.get("prepared");
+    }
+
     /**
      * Helper method - tries to book entire rows.
      */